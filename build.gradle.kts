@@ -50,6 +50,8 @@ val modelsProject = project(":lib:models")
 dependencies {
     implementation(modelsProject)
     implementation("com.fasterxml.jackson.core:jackson-databind:2.12.7.1")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.9.1")
 }
 
 spotless {
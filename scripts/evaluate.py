@@ -235,8 +235,8 @@ class Reachability(ValueQuery):
 @dataclasses.dataclass(frozen=True)
 class MeanPayoff(ValueQuery):
     rewards: str
-    lower_bound: float
-    upper_bound: float
+    lower_bound: Optional[float]
+    upper_bound: Optional[float]
 
     @staticmethod
     def do_parse(data):
@@ -245,8 +245,8 @@ class MeanPayoff(ValueQuery):
         )
         return MeanPayoff(
             rewards=data["rewards"],
-            lower_bound=data["reward_min"],
-            upper_bound=data["reward_max"],
+            lower_bound=data.get("reward_min"),
+            upper_bound=data.get("reward_max"),
             expected_value=expected_value,
         )
 
@@ -306,7 +306,10 @@ class PetSolver(Solver):
     def create_invocation(
         self, model: Model, query: Query, validate: bool
     ) -> subprocess.Popen:
-        model_arguments = self.model_arguments(model)
+        model_arguments = self.model_arguments(model) + [
+            "--seed",
+            os.environ.get("SEED", "1234"),
+        ]
 
         execution = [self.path]
         if isinstance(query, Core):
@@ -327,14 +330,17 @@ class PetSolver(Solver):
             execution += (
                 ["mean-payoff"]
                 + model_arguments
-                + [
-                    "--rewards",
-                    str(query.rewards),
-                    "--reward-min",
-                    str(query.lower_bound),
-                    "--reward-max",
-                    str(query.upper_bound),
-                ]
+                + ["--rewards", str(query.rewards)]
+                + (
+                    ["--reward-min", str(query.lower_bound)]
+                    if query.lower_bound is not None
+                    else []
+                )
+                + (
+                    ["--reward-max", str(query.upper_bound)]
+                    if query.upper_bound is not None
+                    else []
+                )
                 + ["--precision", str(self.precision)]
                 + (["--relative"] if self.relative_error else [])
             )
@@ -2,12 +2,14 @@ package de.tum.in.pet;
 
 import static picocli.CommandLine.Command;
 import static picocli.CommandLine.Model;
+import static picocli.CommandLine.Option;
 import static picocli.CommandLine.ParameterException;
 import static picocli.CommandLine.Spec;
 
 import de.tum.in.pet.implementation.core.CoreChecker;
 import de.tum.in.pet.implementation.meanpayoff.MeanPayoffChecker;
 import de.tum.in.pet.implementation.reachability.ReachChecker;
+import de.tum.in.pet.util.StateSets;
 import de.tum.in.probmodels.cli.Statistics;
 import de.tum.in.probmodels.cli.Uniformization;
 import java.io.IOException;
@@ -47,13 +49,20 @@ public final class Main implements Runnable {
     @Spec
     private Model.CommandSpec spec;
 
+    @Option(
+            names = "--bitset-backend",
+            description = "Representation of state sets: dense, roaring or auto, which compresses large sparse sets "
+                    + "except those inside the quotient (default: dense)")
+    private void setBitSetBackend(String backend) {
+        StateSets.setBackend(backend);
+    }
+
     @Override
     public void run() {
         throw new ParameterException(spec.commandLine(), "Missing required subcommand");
     }
 
     public static void main(String... args) {
-        // NatBitSets.setFactory(new RoaringNatBitSetFactory());
         logger.log(Level.INFO, "Invocation:\n{0}", String.join(" ", args));
         System.exit(new CommandLine(new Main()).execute(args));
     }
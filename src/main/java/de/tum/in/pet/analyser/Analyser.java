@@ -23,4 +23,16 @@ public interface Analyser<S> {
      * Run the analysis and return {@code this} for chaining.
      */
     Analyser<S> run();
+
+    /**
+     * Run at most the given number of rounds of the analysis, which may be continued by another call. Returns
+     * {@code this} for chaining.
+     */
+    Analyser<S> run(long maximalRounds);
+
+    /**
+     * Returns true iff running the analysis further has no effect, i.e. the bounds of all initial states satisfy the
+     * verdict or the analysis had to stop.
+     */
+    boolean isFinished();
 }
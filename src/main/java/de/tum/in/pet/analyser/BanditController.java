@@ -0,0 +1,135 @@
+package de.tum.in.pet.analyser;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Epsilon-greedy multi-armed bandit over a set of parameter settings. Sampling is split into epochs of a fixed number
+ * of rounds, each run with one setting. The reward of an epoch is the (logarithmic) reduction of the gap in the initial
+ * state per millisecond. Since the achievable progress changes during a run, estimates are recency-weighted averages.
+ */
+public final class BanditController implements SamplingController {
+    private static final Logger logger = Logger.getLogger(BanditController.class.getName());
+
+    private static final int ROUNDS_PER_EPOCH = 64;
+    private static final double EXPLORATION_PROBABILITY = 0.1d;
+    private static final double RECENCY_WEIGHT = 0.3d;
+
+    private final List<Parameters> arms;
+    private final double[] estimates;
+    private final int[] epochs;
+    private final long seed;
+    private final Random random;
+
+    private int current = 0;
+    private int rounds = 0;
+    private long epochStart = 0L;
+    private double epochGap = Double.NaN;
+    private int switches = 0;
+
+    public BanditController(List<Parameters> arms, long seed) {
+        checkArgument(!arms.isEmpty());
+        this.arms = List.copyOf(arms);
+        this.estimates = new double[arms.size()];
+        this.epochs = new int[arms.size()];
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * A bandit over a grid of settings around the given default. If the sampler does not backtrack or collapse, only
+     * the number of explores is varied.
+     */
+    public static BanditController around(Parameters defaults, boolean collapsing, long seed) {
+        int[] backtrackValues = collapsing
+                ? new int[] {1, defaults.maxBacktracks(), 4 * defaults.maxBacktracks()}
+                : new int[] {defaults.maxBacktracks()};
+        double[] scaleValues = collapsing
+                ? new double[] {0.25d, defaults.collapseScale(), 4.0d}
+                : new double[] {defaults.collapseScale()};
+
+        List<Parameters> arms = new ArrayList<>();
+        arms.add(defaults);
+        for (int backtracks : backtrackValues) {
+            for (int explores : new int[] {1, defaults.maxExplores(), 4 * defaults.maxExplores()}) {
+                for (double scale : scaleValues) {
+                    Parameters parameters = new Parameters(backtracks, explores, scale);
+                    if (!arms.contains(parameters)) {
+                        arms.add(parameters);
+                    }
+                }
+            }
+        }
+        return new BanditController(arms, seed);
+    }
+
+    @Override
+    public Parameters select(double gap) {
+        rounds += 1;
+        if (rounds == 1) {
+            epochStart = System.nanoTime();
+            epochGap = gap;
+        } else if (rounds > ROUNDS_PER_EPOCH) {
+            long now = System.nanoTime();
+            double milliseconds = Math.max((now - epochStart) / 1.0e6, 1.0e-3);
+            double reward = Math.log(Math.max(epochGap, Double.MIN_NORMAL) / Math.max(gap, Double.MIN_NORMAL))
+                    / milliseconds;
+            estimates[current] =
+                    epochs[current] == 0 ? reward : estimates[current] + RECENCY_WEIGHT * (reward - estimates[current]);
+            epochs[current] += 1;
+
+            int next = next();
+            if (next != current) {
+                switches += 1;
+                logger.log(Level.FINE, "Switching sampling parameters to {0}", new Object[] {arms.get(next)});
+            }
+            current = next;
+            rounds = 1;
+            epochStart = now;
+            epochGap = gap;
+        }
+        return arms.get(current);
+    }
+
+    private int next() {
+        // Try every setting once before exploiting
+        for (int arm = 0; arm < arms.size(); arm++) {
+            if (epochs[arm] == 0) {
+                return arm;
+            }
+        }
+        if (random.nextDouble() < EXPLORATION_PROBABILITY) {
+            return random.nextInt(arms.size());
+        }
+        int best = 0;
+        for (int arm = 1; arm < arms.size(); arm++) {
+            if (estimates[arm] > estimates[best]) {
+                best = arm;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public long seed() {
+        return seed;
+    }
+
+    @Override
+    public Object statistics() {
+        List<ArmStatistics> statistics = new ArrayList<>(arms.size());
+        for (int arm = 0; arm < arms.size(); arm++) {
+            statistics.add(new ArmStatistics(arms.get(arm), epochs[arm], estimates[arm]));
+        }
+        return new BanditStatistics(arms.get(current), switches, statistics);
+    }
+
+    public record ArmStatistics(Parameters parameters, int epochs, double estimate) {}
+
+    public record BanditStatistics(Parameters current, int switches, List<ArmStatistics> arms) {}
+}
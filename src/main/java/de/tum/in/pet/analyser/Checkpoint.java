@@ -0,0 +1,258 @@
+package de.tum.in.pet.analyser;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import de.tum.in.probmodels.values.Bounds;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * The bounds of all explored states of an analysis, stored by the string representation of the states. State ids
+ * depend on the order of exploration and thus are not stable across runs, while the bounds of a state are valid for
+ * any run on the same model instance and property, which both are recorded in the checkpoint.
+ */
+public final class Checkpoint {
+    private static final Logger logger = Logger.getLogger(Checkpoint.class.getName());
+
+    private static final int MAGIC = 0x50455443;
+    private static final int VERSION = 2;
+
+    private final long iterations;
+    private final Object2IntMap<String> index;
+    private final double[] lowerBounds;
+    private final double[] upperBounds;
+
+    private Checkpoint(long iterations, Object2IntMap<String> index, double[] lowerBounds, double[] upperBounds) {
+        this.iterations = iterations;
+        this.index = index;
+        this.lowerBounds = lowerBounds;
+        this.upperBounds = upperBounds;
+    }
+
+    public static Checkpoint read(Path file, String model, String problem) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            String checkpointModel = input.readUTF();
+            checkArgument(
+                    checkpointModel.equals(model), "Checkpoint is for model %s, not %s", checkpointModel, model);
+            String checkpointProblem = input.readUTF();
+            checkArgument(
+                    checkpointProblem.equals(problem),
+                    "Checkpoint is for %s, not %s",
+                    checkpointProblem,
+                    problem);
+            long iterations = input.readLong();
+            int size = input.readInt();
+            Object2IntMap<String> index = new Object2IntOpenHashMap<>(size);
+            index.defaultReturnValue(-1);
+            double[] lowerBounds = new double[size];
+            double[] upperBounds = new double[size];
+            for (int i = 0; i < size; i++) {
+                index.put(input.readUTF(), i);
+                lowerBounds[i] = input.readDouble();
+                upperBounds[i] = input.readDouble();
+            }
+            logger.log(Level.INFO, "Read checkpoint with {0} states after {1} rounds", new Object[] {size, iterations});
+            return new Checkpoint(iterations, index, lowerBounds, upperBounds);
+        }
+    }
+
+    public long iterations() {
+        return iterations;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * The stored bounds of the given states, or {@code null} if a state is not part of the checkpoint.
+     */
+    public IntFunction<Bounds> lookup(IntFunction<?> states) {
+        return state -> {
+            int position = index.getInt(String.valueOf(states.apply(state)));
+            return position < 0 ? null : Bounds.of(lowerBounds[position], upperBounds[position]);
+        };
+    }
+
+    /**
+     * The changes since the previous snapshot of an analysis, in terms of the state ids of the run. The explored states
+     * are stored with their representative in the quotient, and bounds are stored for representatives only. States are
+     * only converted to their string representation when written.
+     *
+     * @param merged representatives which were collapsed into the respective entry of {@code mergedInto}, in order
+     * @param states newly explored states and their current representative
+     * @param updated representatives whose bounds changed, with the new bounds
+     */
+    public record Snapshot(
+            long iterations,
+            int[] merged,
+            int[] mergedInto,
+            int[] states,
+            Object[] stateObjects,
+            int[] representatives,
+            int[] updated,
+            double[] lowerBounds,
+            double[] upperBounds) {}
+
+    /**
+     * Writes snapshots in the background. The snapshots only contain changes, which are accumulated by the writer
+     * thread, so the analysis thread copies only what changed. Each checkpoint is written to a temporary file first and
+     * then moved in place, so an interrupted write never damages the previous checkpoint. When resuming, the states of
+     * the restored checkpoint are written with their restored bounds until they are explored again.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final Path file;
+        private final String model;
+        private final String problem;
+        // Only accessed by the writer thread
+        private final Int2ObjectMap<Object> stateObjects = new Int2ObjectOpenHashMap<>();
+        private final Int2IntMap representatives = new Int2IntOpenHashMap();
+        private final Int2DoubleMap lowerBounds = new Int2DoubleOpenHashMap();
+        private final Int2DoubleMap upperBounds = new Int2DoubleOpenHashMap();
+        @Nullable
+        private final Checkpoint restored;
+        // Positions of the restored states which have not been explored again
+        private final Object2IntMap<String> restoredStates;
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        @Nullable
+        private Future<?> pending = null;
+
+        public Writer(Path file, String model, String problem, @Nullable Checkpoint restored) {
+            this.file = file;
+            this.model = model;
+            this.problem = problem;
+            this.restored = restored;
+            this.restoredStates =
+                    restored == null ? new Object2IntOpenHashMap<>() : new Object2IntOpenHashMap<>(restored.index);
+            lowerBounds.defaultReturnValue(0.0d);
+            upperBounds.defaultReturnValue(1.0d);
+        }
+
+        /**
+         * Whether the previous snapshot is still being written.
+         */
+        public boolean isBusy() {
+            return pending != null && !pending.isDone();
+        }
+
+        public void write(Snapshot snapshot) {
+            pending = executor.submit(() -> {
+                try {
+                    apply(snapshot);
+                    writeFile(snapshot.iterations());
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to write checkpoint", e);
+                }
+            });
+        }
+
+        private void apply(Snapshot snapshot) {
+            if (snapshot.merged().length > 0) {
+                Int2IntMap merges = new Int2IntOpenHashMap(snapshot.merged().length);
+                for (int i = 0; i < snapshot.merged().length; i++) {
+                    merges.put(snapshot.merged()[i], snapshot.mergedInto()[i]);
+                }
+                for (Int2IntMap.Entry entry : representatives.int2IntEntrySet()) {
+                    int representative = entry.getIntValue();
+                    while (merges.containsKey(representative)) {
+                        representative = merges.get(representative);
+                    }
+                    entry.setValue(representative);
+                }
+            }
+            for (int i = 0; i < snapshot.states().length; i++) {
+                stateObjects.put(snapshot.states()[i], snapshot.stateObjects()[i]);
+                representatives.put(snapshot.states()[i], snapshot.representatives()[i]);
+                if (!restoredStates.isEmpty()) {
+                    restoredStates.removeInt(String.valueOf(snapshot.stateObjects()[i]));
+                }
+            }
+            for (int i = 0; i < snapshot.updated().length; i++) {
+                lowerBounds.put(snapshot.updated()[i], snapshot.lowerBounds()[i]);
+                upperBounds.put(snapshot.updated()[i], snapshot.upperBounds()[i]);
+            }
+        }
+
+        private void writeFile(long iterations) throws IOException {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(model);
+                output.writeUTF(problem);
+                output.writeLong(iterations);
+                output.writeInt(stateObjects.size() + restoredStates.size());
+                for (Int2ObjectMap.Entry<Object> entry : stateObjects.int2ObjectEntrySet()) {
+                    int representative = representatives.get(entry.getIntKey());
+                    output.writeUTF(String.valueOf(entry.getValue()));
+                    output.writeDouble(lowerBounds.get(representative));
+                    output.writeDouble(upperBounds.get(representative));
+                }
+                if (restored != null) {
+                    for (Object2IntMap.Entry<String> entry : restoredStates.object2IntEntrySet()) {
+                        output.writeUTF(entry.getKey());
+                        output.writeDouble(restored.lowerBounds[entry.getIntValue()]);
+                        output.writeDouble(restored.upperBounds[entry.getIntValue()]);
+                    }
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.log(
+                    Level.FINE,
+                    "Wrote checkpoint with {0} states ({1} restored)",
+                    new Object[] {stateObjects.size() + restoredStates.size(), restoredStates.size()});
+        }
+
+        /**
+         * Waits for the pending snapshot to be written.
+         */
+        @Override
+        public void close() {
+            try {
+                if (pending != null) {
+                    pending.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new UncheckedIOException(new IOException(e.getCause()));
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
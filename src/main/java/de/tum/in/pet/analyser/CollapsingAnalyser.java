@@ -1,28 +1,39 @@
 package de.tum.in.pet.analyser;
 
 import de.tum.in.naturals.set.NatBitSet;
-import de.tum.in.naturals.set.NatBitSets;
+import de.tum.in.pet.util.StateSets;
 import de.tum.in.probmodels.explorer.Explorer;
 import de.tum.in.probmodels.explorer.SelfLoopHandling;
 import de.tum.in.probmodels.graph.Component;
+import de.tum.in.probmodels.model.Choice;
 import de.tum.in.probmodels.model.TransitionSystem;
 import de.tum.in.probmodels.model.distribution.Distribution;
 import de.tum.in.probmodels.model.impl.DynamicQuotient;
 import de.tum.in.probmodels.problem.verdict.BoundVerdict;
 import de.tum.in.probmodels.values.Bounds;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 @SuppressWarnings("PMD.TooManyFields")
 public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
     private static final Logger logger = Logger.getLogger(CollapsingAnalyser.class.getName());
+    // The quotient merges the distributions of a collapsed component on every access, which is worth caching only
+    // for larger components
+    private static final int CACHED_COMPONENT_SIZE = 64;
 
     // CHECKSTYLE.OFF: VisibilityModifier
     protected final Explorer<S> explorer;
@@ -32,6 +43,28 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
     // CHECKSTYLE.ON: VisibilityModifier
 
     private final IntSet exploredSinceLastCollapse = new IntOpenHashSet();
+    private final List<Milestone<S, C>> milestones = new ArrayList<>();
+    private final Int2ObjectMap<List<Distribution>> distributionCache = new Int2ObjectOpenHashMap<>();
+    private final Int2ObjectMap<IntSet> cachedPredecessors = new Int2ObjectOpenHashMap<>();
+    private final IntSet cachedRepresentatives = new IntOpenHashSet();
+    // Unexplored states of the quotient in order of discovery, valid while the number of explored states matches
+    private final IntLinkedOpenHashSet unexploredStates = new IntLinkedOpenHashSet();
+    private int trackedExploredCount = -1;
+    private final MutableBounds updateResult = new MutableBounds();
+    @Nullable
+    private MemoryGuard memoryGuard = null;
+    private boolean memoryReleased = false;
+    private boolean memoryExhausted = false;
+    @Nullable
+    private Checkpoint.Writer checkpointWriter = null;
+    private long checkpointInterval = 0L;
+    private long lastCheckpoint = 0L;
+    // Changes since the last checkpoint, only tracked while checkpointing
+    private final IntSet checkpointExplored = new IntOpenHashSet();
+    private final IntSet checkpointUpdated = new IntOpenHashSet();
+    private final IntList checkpointMerged = new IntArrayList();
+    private final IntList checkpointMergedInto = new IntArrayList();
+    private int checkpointedCount = 0;
     private int iterationsSinceExplore = 0;
     private int expandThreshold = 10;
     private int exploresBeforeCollapse = 100;
@@ -60,8 +93,26 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
 
     @Override
     public PartialSystem model() {
-        IntSet exploredStates = new IntOpenHashSet(explorer.exploredStates());
-        exploredStates.removeIf((int state) -> values.isUnknown(quotient.representative(state)));
+        // Collected directly into a bit set, without an intermediate copy of all explored states. The first pass only
+        // determines the size, so that the representation can be selected.
+        int size = 0;
+        int largest = -1;
+        IntIterator iterator = explorer.exploredStates().iterator();
+        while (iterator.hasNext()) {
+            int state = iterator.nextInt();
+            if (!values.isUnknown(quotient.representative(state))) {
+                size += 1;
+                largest = state;
+            }
+        }
+        NatBitSet exploredStates = StateSets.set(size, largest);
+        iterator = explorer.exploredStates().iterator();
+        while (iterator.hasNext()) {
+            int state = iterator.nextInt();
+            if (!values.isUnknown(quotient.representative(state))) {
+                exploredStates.set(state);
+            }
+        }
         return new PartialSystem(explorer.partialSystem(), exploredStates);
     }
 
@@ -70,27 +121,77 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
         return values.bounds(quotient.representative(state));
     }
 
+    /**
+     * The state representing the given state in the quotient, i.e. the state under which its values are stored.
+     */
+    public int representative(int state) {
+        return quotient.representative(state);
+    }
+
+    /**
+     * Registers an action which is executed once, as soon as the bounds of all initial states satisfy the given
+     * verdict. Milestones which are never reached during the run are not executed.
+     */
+    public void addMilestone(BoundVerdict milestone, Consumer<? super CollapsingAnalyser<S, C>> action) {
+        milestones.add(new Milestone<>(milestone, action));
+    }
+
+    private void checkMilestones() {
+        milestones.removeIf(milestone -> {
+            if (explorer.initialStateIds().intStream().allMatch(s -> milestone.verdict().isSolved(bounds(s)))) {
+                milestone.action().accept(this);
+                return true;
+            }
+            return false;
+        });
+    }
+
     @Override
     public CollapsingAnalyser<S, C> run() {
+        return run(Long.MAX_VALUE);
+    }
+
+    @Override
+    public CollapsingAnalyser<S, C> run(long maximalRounds) {
         time = System.currentTimeMillis();
+        long rounds = 0L;
         for (int initialState : explorer.initialStateIds()) {
             // The representative of the initial states might be a different state
             int representative = quotient.representative(initialState);
-            while (!verdict.isSolved(values.bounds(representative))) {
+            while (!values.isSolved(representative, verdict)) {
+                if (isMemoryExhausted() || rounds == maximalRounds) {
+                    break;
+                }
+                rounds += 1;
                 var sampling = getPairs(representative);
-                sampling.pairs().forEach(pair -> pair.update(values));
+                sampling.pairs().forEach(pair -> {
+                    pair.update(values, updateResult);
+                    updated(pair.state());
+                    if (checkpointWriter != null) {
+                        checkpointUpdated.add(pair.state());
+                    }
+                });
+                if (!milestones.isEmpty()) {
+                    checkMilestones();
+                }
                 iterations += 1;
                 iterationsSinceExplore += 1;
 
                 if (iterationsSinceExplore > expandThreshold) {
-                    var states = NatBitSets.ensureModifiable(NatBitSets.copyOf(quotient.states()));
-                    states.andNot(explorer.exploredStates());
-                    IntIterator iterator = states.iterator();
-                    int count = 0;
-                    while (iterator.hasNext() && count < expandThreshold) {
-                        explore(iterator.nextInt());
-                        count += 1;
+                    // Collect the states first, exploring adds states to the quotient
+                    IntList unexplored = new IntArrayList(expandThreshold);
+                    if (explorer.exploredStateCount() != trackedExploredCount) {
+                        // States were explored elsewhere, e.g. by another analyser sharing the explorer
+                        findUnexploredStates();
+                    }
+                    while (!unexploredStates.isEmpty() && unexplored.size() < expandThreshold) {
+                        int state = unexploredStates.removeFirstInt();
+                        if (!explorer.isExploredState(state)) {
+                            unexplored.add(state);
+                        }
                     }
+                    unexplored.forEach((int state) -> explore(state));
+                    int count = unexplored.size();
                     //noinspection NumericCastThatLosesPrecision
                     expandThreshold = (int) Math.sqrt(quotient.stateCount());
                     logger.log(Level.FINE, "Updating components after expansion");
@@ -99,12 +200,130 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
 
                 representative = quotient.representative(representative);
                 logUpdate(false);
+                checkpoint(false);
             }
         }
+        checkMilestones();
         logUpdate(true);
+        checkpoint(true);
         return this;
     }
 
+    @Override
+    public boolean isFinished() {
+        return isMemoryExhausted()
+                || explorer.initialStateIds()
+                        .intStream()
+                        .allMatch(s -> values.isSolved(quotient.representative(s), verdict));
+    }
+
+    /**
+     * Release memory once the guard reports that the memory budget is exceeded, and stop the analysis if the budget
+     * still is exceeded afterwards. The bounds obtained so far remain valid, but may not satisfy the verdict.
+     */
+    public void setMemoryGuard(@Nullable MemoryGuard memoryGuard) {
+        this.memoryGuard = memoryGuard;
+    }
+
+    public boolean isMemoryExhausted() {
+        if (!memoryExhausted && memoryGuard != null && memoryGuard.isExhausted()) {
+            if (memoryReleased) {
+                logger.log(Level.WARNING, "Memory budget exceeded, stopping with current bounds");
+                memoryExhausted = true;
+            } else {
+                logger.log(Level.WARNING, "Memory budget exceeded, releasing caches and compacting bounds");
+                releaseMemory();
+                memoryGuard.reset();
+            }
+        }
+        return memoryExhausted;
+    }
+
+    /**
+     * Evicts the distribution cache, which is not filled again afterwards, and compacts the values.
+     */
+    private void releaseMemory() {
+        distributionCache.clear();
+        cachedPredecessors.clear();
+        cachedRepresentatives.clear();
+        values.compact();
+        memoryReleased = true;
+    }
+
+    /**
+     * Periodically write the bounds of all explored states to the given writer. Snapshots only contain the states and
+     * bounds changed since the previous one and are taken on the analysis thread, but written in the background. While
+     * the previous snapshot is still being written, changes keep accumulating until the next one.
+     */
+    public void setCheckpoint(Checkpoint.Writer writer, long intervalMillis) {
+        this.checkpointWriter = writer;
+        this.checkpointInterval = intervalMillis;
+        this.lastCheckpoint = System.currentTimeMillis();
+    }
+
+    /**
+     * Continue the round count of the analysis which wrote the given checkpoint. Its bounds are not restored here, but
+     * by the values of the analysis.
+     */
+    public void resume(Checkpoint checkpoint) {
+        logger.log(
+                Level.INFO,
+                "Resuming after {0} rounds with the bounds of {1} states",
+                new Object[] {checkpoint.iterations(), checkpoint.size()});
+        this.iterations = checkpoint.iterations();
+    }
+
+    private void checkpoint(boolean force) {
+        if (checkpointWriter == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && (now - lastCheckpoint < checkpointInterval || checkpointWriter.isBusy())) {
+            return;
+        }
+        lastCheckpoint = now;
+
+        if (explorer.exploredStateCount() != checkpointedCount + checkpointExplored.size()) {
+            // States were explored elsewhere, e.g. by another analyser on the same explorer
+            IntIterator iterator = explorer.exploredStates().iterator();
+            while (iterator.hasNext()) {
+                checkpointExplored.add(iterator.nextInt());
+            }
+        }
+        checkpointedCount = explorer.exploredStateCount();
+
+        int[] states = checkpointExplored.toIntArray();
+        Object[] stateObjects = new Object[states.length];
+        int[] representatives = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            stateObjects[i] = explorer.getState(states[i]);
+            representatives[i] = quotient.representative(states[i]);
+            checkpointUpdated.add(representatives[i]);
+        }
+        // Updated states may have been collapsed since
+        int[] updated = checkpointUpdated.intStream().map(quotient::representative).distinct().toArray();
+        double[] lowerBounds = new double[updated.length];
+        double[] upperBounds = new double[updated.length];
+        for (int i = 0; i < updated.length; i++) {
+            lowerBounds[i] = values.lowerBound(updated[i]);
+            upperBounds[i] = values.upperBound(updated[i]);
+        }
+        checkpointWriter.write(new Checkpoint.Snapshot(
+                iterations,
+                checkpointMerged.toIntArray(),
+                checkpointMergedInto.toIntArray(),
+                states,
+                stateObjects,
+                representatives,
+                updated,
+                lowerBounds,
+                upperBounds));
+        checkpointExplored.clear();
+        checkpointUpdated.clear();
+        checkpointMerged.clear();
+        checkpointMergedInto.clear();
+    }
+
     private void logUpdate(boolean force) {
         if (!logger.isLoggable(Level.INFO)) {
             return;
@@ -128,22 +347,83 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
 
     protected abstract SamplingResult<C> getPairs(int initialState);
 
+    /**
+     * Notify that the values of the given state have been updated.
+     */
+    protected void updated(int state) {
+        // Empty by default
+    }
+
+    /**
+     * Notify that components have been collapsed, i.e. states of the quotient are removed and their distributions
+     * changed.
+     */
+    protected void collapsed() {
+        // Empty by default
+    }
+
     protected void explore(int state) {
         assert !explorer.isExploredState(state);
         exploredSinceLastCollapse.add(state);
+        if (checkpointWriter != null) {
+            checkpointExplored.add(state);
+        }
         iterationsSinceExplore = 0;
+        boolean tracked = explorer.exploredStateCount() == trackedExploredCount;
         explorer.exploreState(state);
+        // Only the successors of this state are added, hence tracking continues only if no other state was explored
+        if (tracked && explorer.exploredStateCount() == trackedExploredCount + 1) {
+            trackedExploredCount += 1;
+            for (Choice choice : explorer.choices(state)) {
+                IntIterator iterator = choice.distribution().support().iterator();
+                while (iterator.hasNext()) {
+                    int successor = iterator.nextInt();
+                    if (!explorer.isExploredState(successor)) {
+                        unexploredStates.add(successor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the unexplored states of the quotient by a full scan. Afterwards, they are tracked incrementally by
+     * {@link #explore(int)}, so that an expansion does not need to scan all states.
+     */
+    private void findUnexploredStates() {
+        unexploredStates.clear();
+        IntIterator iterator = quotient.states().iterator();
+        while (iterator.hasNext()) {
+            int state = iterator.nextInt();
+            if (!explorer.isExploredState(state)) {
+                unexploredStates.add(state);
+            }
+        }
+        trackedExploredCount = explorer.exploredStateCount();
     }
 
     protected void exploreReachable(int state) {
-        NatBitSet explored = NatBitSets.copyOf(explorer.exploredStates());
+        int exploredCount = explorer.exploredStates().size();
+        NatBitSet explored = StateSets.modifiableCopyOf(explorer.exploredStates());
+        boolean tracked = exploredCount == trackedExploredCount;
         explorer.exploreReachable(IntSet.of(state));
-        NatBitSet exploredAfter = NatBitSets.ensureModifiable(NatBitSets.copyOf(explorer.exploredStates()));
-        exploredAfter.andNot(explored);
-        if (exploredAfter.isEmpty()) {
+        if (explorer.exploredStates().size() == exploredCount) {
             return;
         }
-        exploredSinceLastCollapse.addAll(exploredAfter);
+        if (tracked) {
+            // All successors of the newly explored states are explored as well
+            trackedExploredCount = explorer.exploredStateCount();
+        }
+        IntIterator iterator = explorer.exploredStates().iterator();
+        while (iterator.hasNext()) {
+            int exploredState = iterator.nextInt();
+            if (!explored.contains(exploredState)) {
+                exploredSinceLastCollapse.add(exploredState);
+                if (checkpointWriter != null) {
+                    checkpointExplored.add(exploredState);
+                }
+            }
+        }
         iterationsSinceExplore = 0;
     }
 
@@ -169,16 +449,84 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
         }
         exploresBeforeCollapse = exploresBeforeCollapseReset;
         successfulComponentSearches += 1;
+        invalidateDistributions(newComponents);
         for (Int2ObjectMap.Entry<Component> entry : newComponents.int2ObjectEntrySet()) {
             int representative = entry.getIntKey();
             values.collapse(representative, distributions(representative), entry.getValue());
+            if (checkpointWriter != null) {
+                entry.getValue().stateStream().filter(s -> s != representative).forEach(s -> {
+                    checkpointMerged.add(s);
+                    checkpointMergedInto.add(representative);
+                });
+                checkpointUpdated.add(representative);
+            }
         }
+        collapsed();
         return true;
     }
 
     protected List<Distribution> distributions(int state) {
         assert explorer.isExploredState(state);
-        return quotient.distributions(state);
+        List<Distribution> distributions = distributionCache.get(state);
+        if (distributions != null) {
+            return distributions;
+        }
+        if (!cachedRepresentatives.contains(state)) {
+            return quotient.distributions(state);
+        }
+        // The transitions of explored states are fixed, only collapsing changes them
+        List<Distribution> cached = List.copyOf(quotient.distributions(state));
+        distributionCache.put(state, cached);
+        for (Distribution distribution : cached) {
+            distribution
+                    .support()
+                    .forEach((int successor) -> cachedPredecessors
+                            .computeIfAbsent(successor, s -> new IntOpenHashSet())
+                            .add(state));
+        }
+        return cached;
+    }
+
+    private void invalidateDistributions(Int2ObjectMap<Component> components) {
+        for (Int2ObjectMap.Entry<Component> entry : components.int2ObjectEntrySet()) {
+            int representative = entry.getIntKey();
+            IntSet states = entry.getValue().states();
+            IntIterator iterator = states.iterator();
+            while (iterator.hasNext()) {
+                int state = iterator.nextInt();
+                cachedRepresentatives.remove(state);
+                uncache(state);
+                // Distributions leading into a collapsed component are redirected to its representative
+                if (state != representative) {
+                    @Nullable IntSet predecessors = cachedPredecessors.remove(state);
+                    if (predecessors != null) {
+                        predecessors.forEach((int predecessor) -> uncache(predecessor));
+                    }
+                }
+            }
+            uncache(representative);
+            if (!memoryReleased && states.size() >= CACHED_COMPONENT_SIZE) {
+                cachedRepresentatives.add(representative);
+            }
+        }
+    }
+
+    private void uncache(int state) {
+        @Nullable List<Distribution> distributions = distributionCache.remove(state);
+        if (distributions == null) {
+            return;
+        }
+        for (Distribution distribution : distributions) {
+            distribution.support().forEach((int successor) -> {
+                @Nullable IntSet predecessors = cachedPredecessors.get(successor);
+                if (predecessors != null) {
+                    predecessors.remove(state);
+                    if (predecessors.isEmpty()) {
+                        cachedPredecessors.remove(successor);
+                    }
+                }
+            });
+        }
     }
 
     public UnboundedStatistics statistics() {
@@ -189,10 +537,16 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
         public Bounds update(CollapsingValues<C> values) {
             return values.update(state, distributions, choices, choice);
         }
+
+        public void update(CollapsingValues<C> values, MutableBounds result) {
+            values.update(state, distributions, choices, choice, result);
+        }
     }
 
     public record SamplingResult<C>(Stream<Pair<C>> pairs) {}
 
+    private record Milestone<S, C>(BoundVerdict verdict, Consumer<? super CollapsingAnalyser<S, C>> action) {}
+
     public static class UnboundedStatistics {
         // CHECKSTYLE.OFF: VisibilityModifier
         public final int exploredStates;
@@ -200,6 +554,8 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
         public final int componentSearches;
         public final int successfulComponentSearches;
         public final long iterations;
+        public final boolean memoryReleased;
+        public final boolean memoryExhausted;
         // CHECKSTYLE.ON: VisibilityModifier
 
         public UnboundedStatistics(CollapsingAnalyser<?, ?> analyser) {
@@ -207,6 +563,8 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
             this.componentSearches = analyser.componentSearches;
             this.successfulComponentSearches = analyser.successfulComponentSearches;
             this.iterations = analyser.iterations;
+            this.memoryReleased = analyser.memoryReleased;
+            this.memoryExhausted = analyser.memoryExhausted;
             this.statesInQuotient = analyser.quotient
                     .statesStream()
                     .filter(analyser.explorer::isExploredState)
@@ -221,7 +579,9 @@ public abstract class CollapsingAnalyser<S, C> implements Analyser<S> {
                             statesInQuotient,
                             iterations,
                             componentSearches,
-                            successfulComponentSearches);
+                            successfulComponentSearches)
+                    + (memoryReleased && !memoryExhausted ? "%nReleased memory due to memory budget".formatted() : "")
+                    + (memoryExhausted ? "%nStopped due to memory budget".formatted() : "");
         }
     }
 }
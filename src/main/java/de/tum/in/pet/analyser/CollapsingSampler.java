@@ -14,21 +14,40 @@ import javax.annotation.Nullable;
 
 @SuppressWarnings("PMD.TooManyFields")
 public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
-    private static final int MAX_BACKTRACK_PER_SAMPLE = 4;
-    private static final int MAX_EXPLORES_PER_SAMPLE = 4;
     private static final int INITIAL_COLLAPSE_THRESHOLD = 10;
 
+    private final SamplingController controller;
+    private final SamplingIndex index;
+
     private long collapseThreshold = INITIAL_COLLAPSE_THRESHOLD;
     private int loopCount = 0;
 
     private final IntSet visitedStateSet = new IntOpenHashSet(128);
+    private final MutableBounds backtrackResult = new MutableBounds();
     private final Deque<Pair<C>> samples = new ArrayDeque<>(128);
 
     private long backtrackCount = 0;
     private long backtrackToInitialCount = 0;
 
     public CollapsingSampler(Explorer<S> explorer, CollapsingValues<C> values, BoundVerdict verdict) {
+        this(explorer, values, verdict, SamplingController.fixed(SamplingController.COLLAPSING_DEFAULT));
+    }
+
+    public CollapsingSampler(
+            Explorer<S> explorer, CollapsingValues<C> values, BoundVerdict verdict, SamplingController controller) {
         super(explorer, values, verdict);
+        this.controller = controller;
+        this.index = new SamplingIndex(values::difference, controller.seed());
+    }
+
+    @Override
+    protected void updated(int state) {
+        index.refresh(state);
+    }
+
+    @Override
+    protected void collapsed() {
+        index.clear();
     }
 
     @Override
@@ -40,6 +59,9 @@ public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
 
         samples.clear();
         visitedStateSet.clear();
+        SamplingController.Parameters parameters = controller.select(values.difference(initialState));
+        int maxBacktracks = parameters.maxBacktracks();
+        int maxExplores = parameters.maxExplores();
 
         int exploreCount = 0;
         int currentState = initialState;
@@ -67,13 +89,13 @@ public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
                 if (distribution == null) {
                     nextState = -1;
                 } else {
-                    nextState = distribution.sampleWeightedExcept(
-                            (s, p) -> p * values.difference(s), visitedStateSet::contains);
+                    nextState = index.sampleExcept(
+                            state, indexOf(distributions, distribution), distribution, visitedStateSet::contains);
                 }
             }
 
             if (nextState == -1) {
-                if (sampleBacktraceCount == MAX_BACKTRACK_PER_SAMPLE) {
+                if (sampleBacktraceCount >= maxBacktracks) {
                     checkForComponents = true;
                     break;
                 }
@@ -89,8 +111,10 @@ public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
                     var backtrack = samples.removeFirst();
                     currentState = backtrack.state();
                     visitedStateSet.remove(currentState);
-                    difference = bounds(currentState).difference();
-                    updatedDifference = backtrack.update(values).difference();
+                    difference = values.difference(quotient.representative(currentState));
+                    backtrack.update(values, backtrackResult);
+                    updatedDifference = backtrackResult.difference();
+                    index.refresh(currentState);
                     loopCount += 1;
                 } while (Util.isEqual(difference, updatedDifference) && currentState != initialState);
                 if (currentState == initialState) {
@@ -101,7 +125,7 @@ public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
                 sampleBacktraceCount += 1;
             } else {
                 if (!explorer.isExploredState(nextState)) {
-                    if (exploreCount == MAX_EXPLORES_PER_SAMPLE) {
+                    if (exploreCount >= maxExplores) {
                         break;
                     }
                     collapseThreshold -= 1;
@@ -131,7 +155,7 @@ public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
                 if (handleComponents(false)) {
                     samples.clear();
                     //noinspection NumericCastThatLosesPrecision
-                    collapseThreshold = (int) Math.sqrt(quotient.stateCount());
+                    collapseThreshold = (int) (parameters.collapseScale() * Math.sqrt(quotient.stateCount()));
                 } else {
                     collapseThreshold = quotient.stateCount();
                 }
@@ -141,6 +165,15 @@ public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
         return new SamplingResult<>(samples.stream());
     }
 
+    private static int indexOf(List<Distribution> distributions, Distribution distribution) {
+        for (int i = 0; i < distributions.size(); i++) {
+            if (distributions.get(i) == distribution) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public UnboundedStatistics statistics() {
         return new UnboundedSamplerStatistics(this);
@@ -150,18 +183,20 @@ public final class CollapsingSampler<S, C> extends CollapsingAnalyser<S, C> {
         // CHECKSTYLE.OFF: VisibilityModifier
         public final long backtrackCount;
         public final long backtrackToInitialCount;
+        public final Object controller;
         // CHECKSTYLE.ON: VisibilityModifier
 
         public UnboundedSamplerStatistics(CollapsingSampler<?, ?> sampler) {
             super(sampler);
             this.backtrackCount = sampler.backtrackCount;
             this.backtrackToInitialCount = sampler.backtrackToInitialCount;
+            this.controller = sampler.controller.statistics();
         }
 
         @Override
         public String toString() {
-            return "%s%n%d backtracks, %d to initial"
-                    .formatted(super.toString(), backtrackCount, backtrackToInitialCount);
+            return "%s%n%d backtracks, %d to initial%nSampling control: %s"
+                    .formatted(super.toString(), backtrackCount, backtrackToInitialCount, controller);
         }
     }
 }
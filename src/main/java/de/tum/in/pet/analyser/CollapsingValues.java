@@ -3,6 +3,7 @@ package de.tum.in.pet.analyser;
 import de.tum.in.pet.implementation.meanpayoff.MeanPayoffValues;
 import de.tum.in.probmodels.graph.Component;
 import de.tum.in.probmodels.model.distribution.Distribution;
+import de.tum.in.probmodels.problem.verdict.BoundVerdict;
 import de.tum.in.probmodels.values.Bounds;
 import java.util.List;
 import java.util.function.ToDoubleFunction;
@@ -18,6 +19,14 @@ public interface CollapsingValues<C> {
      */
     Bounds bounds(int state);
 
+    /**
+     * Returns true iff the values of the given (initial) state are solved according to the verdict. This is queried
+     * once per sampling round.
+     */
+    default boolean isSolved(int state, BoundVerdict verdict) {
+        return verdict.isSolved(bounds(state));
+    }
+
     /**
      * Returns true iff no information is known about the state (used in pruning models).
      */
@@ -87,8 +96,24 @@ public interface CollapsingValues<C> {
      */
     Bounds update(int state, List<Distribution> distributions, List<? extends C> choices, C selected);
 
+    /**
+     * Update the values like {@link #update(int, List, List, Object)}, but write the new bounds into the given holder.
+     * Implementations should override this method to avoid allocation, it is the one used by the analysers.
+     */
+    default void update(
+            int state, List<Distribution> distributions, List<? extends C> choices, C selected, MutableBounds result) {
+        result.set(update(state, distributions, choices, selected));
+    }
+
     /**
      * Notify that the given component is found and collapsed with the given representative and transient distribution.
      */
     void collapse(int representative, List<Distribution> distributions, Component collapsed);
+
+    /**
+     * Release memory when the memory budget is exceeded. The stored bounds need to remain sound, but may become looser.
+     */
+    default void compact() {
+        // Empty
+    }
 }
@@ -0,0 +1,130 @@
+package de.tum.in.pet.analyser;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import de.tum.in.probmodels.graph.Component;
+import de.tum.in.probmodels.model.distribution.Distribution;
+import de.tum.in.probmodels.problem.verdict.BoundVerdict;
+import de.tum.in.probmodels.values.Bounds;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.Nullable;
+
+/**
+ * Combines several values over the same system, so that a single analyser (and thus a single explorer and quotient)
+ * serves all of them. Sampling is guided by the member with the widest gap among those which are not yet solved, while
+ * updates and collapses are applied to all members. All members need to yield the same choices for each state and
+ * optimize in the same direction, since the choice selected by the guiding member is used to update all members.
+ */
+public final class CompositeValues<C> implements CollapsingValues<C> {
+    private final List<? extends CollapsingValues<C>> members;
+    private final List<? extends BoundVerdict> verdicts;
+    private CollapsingValues<C> active;
+
+    public CompositeValues(List<? extends CollapsingValues<C>> members, List<? extends BoundVerdict> verdicts) {
+        checkArgument(!members.isEmpty() && members.size() == verdicts.size());
+        this.members = List.copyOf(members);
+        this.verdicts = List.copyOf(verdicts);
+        this.active = members.get(0);
+    }
+
+    /**
+     * Returns true iff every member is solved according to its own verdict, the given verdict is ignored. Otherwise,
+     * the unsolved member with the widest gap in the given state is used to guide the following samples.
+     */
+    @Override
+    public boolean isSolved(int state, BoundVerdict verdict) {
+        @Nullable CollapsingValues<C> widest = null;
+        double widestGap = -1.0d;
+        for (int i = 0; i < members.size(); i++) {
+            CollapsingValues<C> member = members.get(i);
+            Bounds bounds = member.bounds(state);
+            if (!member.isSolved(state, verdicts.get(i)) && bounds.difference() > widestGap) {
+                widest = member;
+                widestGap = bounds.difference();
+            }
+        }
+        if (widest == null) {
+            return true;
+        }
+        active = widest;
+        return false;
+    }
+
+    @Override
+    public Bounds bounds(int state) {
+        return active.bounds(state);
+    }
+
+    @Override
+    public boolean isUnknown(int state) {
+        for (CollapsingValues<C> member : members) {
+            if (!member.isUnknown(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double lowerBound(int state) {
+        return active.lowerBound(state);
+    }
+
+    @Override
+    public double upperBound(int state) {
+        return active.upperBound(state);
+    }
+
+    @Override
+    public double difference(int state) {
+        return active.difference(state);
+    }
+
+    @Override
+    public List<? extends C> choices(int state, List<Distribution> distributions) {
+        return active.choices(state, distributions);
+    }
+
+    @Nullable
+    @Override
+    public Distribution successors(int state, List<Distribution> distributions, C choice) {
+        return active.successors(state, distributions, choice);
+    }
+
+    @Override
+    public ToDoubleFunction<C> score(int state, List<Distribution> distributions, List<? extends C> choices) {
+        return active.score(state, distributions, choices);
+    }
+
+    @Override
+    public Bounds update(int state, List<Distribution> distributions, List<? extends C> choices, C selected) {
+        for (CollapsingValues<C> member : members) {
+            member.update(state, distributions, choices, selected);
+        }
+        return active.bounds(state);
+    }
+
+    @Override
+    public void update(
+            int state, List<Distribution> distributions, List<? extends C> choices, C selected, MutableBounds result) {
+        for (CollapsingValues<C> member : members) {
+            if (member != active) {
+                member.update(state, distributions, choices, selected, result);
+            }
+        }
+        active.update(state, distributions, choices, selected, result);
+    }
+
+    @Override
+    public void collapse(int representative, List<Distribution> distributions, Component collapsed) {
+        for (CollapsingValues<C> member : members) {
+            member.collapse(representative, distributions, collapsed);
+        }
+    }
+
+    @Override
+    public void compact() {
+        members.forEach(CollapsingValues::compact);
+    }
+}
@@ -0,0 +1,89 @@
+package de.tum.in.pet.analyser;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.NotificationEmitter;
+
+/**
+ * Signals when the heap usage after garbage collection exceeds a budget, so that analysers can stop with the bounds
+ * obtained so far instead of failing with an {@link OutOfMemoryError}. Thresholds are a property of the JVM, hence
+ * the most recently set budget applies to all guards. Each guard only reports the notifications received after its
+ * creation, so every analysis should use its own guard.
+ */
+public final class MemoryGuard {
+    private static final Logger logger = Logger.getLogger(MemoryGuard.class.getName());
+
+    private static final Set<MemoryGuard> guards = Collections.newSetFromMap(new WeakHashMap<>());
+    private static boolean listening = false;
+
+    private final double budget;
+    private volatile boolean exceeded = false;
+
+    private MemoryGuard(double budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Creates a guard for the given fraction of the maximal heap.
+     */
+    public static synchronized MemoryGuard withBudget(double budget) {
+        checkArgument(0.0d < budget && budget <= 1.0d, "Memory budget %s not in (0, 1]", budget);
+
+        boolean supported = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                //noinspection NumericCastThatLosesPrecision
+                pool.setCollectionUsageThreshold(Math.max(1L, (long) (max * budget)));
+                supported = true;
+            }
+        }
+        if (!supported) {
+            logger.log(Level.WARNING, "Heap does not support usage thresholds, ignoring memory budget");
+        }
+        if (!listening) {
+            var emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+            emitter.addNotificationListener(
+                    (notification, handback) -> {
+                        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+                                notification.getType())) {
+                            synchronized (MemoryGuard.class) {
+                                guards.forEach(guard -> guard.exceeded = true);
+                            }
+                        }
+                    },
+                    null,
+                    null);
+            listening = true;
+        }
+        MemoryGuard guard = new MemoryGuard(budget);
+        guards.add(guard);
+        return guard;
+    }
+
+    public boolean isExhausted() {
+        return exceeded;
+    }
+
+    /**
+     * Forget previous notifications, e.g. after memory has been released. The guard then only reports the budget being
+     * exceeded by a later garbage collection.
+     */
+    public void reset() {
+        exceeded = false;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryGuard(%.2f)".formatted(budget);
+    }
+}
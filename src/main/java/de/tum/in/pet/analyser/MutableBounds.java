@@ -0,0 +1,41 @@
+package de.tum.in.pet.analyser;
+
+import de.tum.in.probmodels.values.Bounds;
+
+/**
+ * A reusable pair of lower and upper bound, used to pass bounds around on hot paths without allocation.
+ */
+public final class MutableBounds {
+    private double lowerBound = 0.0d;
+    private double upperBound = 1.0d;
+
+    public void set(double lowerBound, double upperBound) {
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    public void set(Bounds bounds) {
+        set(bounds.lowerBound(), bounds.upperBound());
+    }
+
+    public double lowerBound() {
+        return lowerBound;
+    }
+
+    public double upperBound() {
+        return upperBound;
+    }
+
+    public double difference() {
+        return upperBound - lowerBound;
+    }
+
+    public Bounds toBounds() {
+        return Bounds.of(lowerBound, upperBound);
+    }
+
+    @Override
+    public String toString() {
+        return "[%f, %f]".formatted(lowerBound, upperBound);
+    }
+}
@@ -1,5 +1,6 @@
 package de.tum.in.pet.analyser;
 
+import de.tum.in.pet.util.StateSets;
 import de.tum.in.probmodels.explorer.Explorer;
 import de.tum.in.probmodels.model.Choice;
 import de.tum.in.probmodels.problem.verdict.BoundVerdict;
@@ -9,6 +10,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 public abstract class PrefixAnalyser<S> implements Analyser<S> {
     private static final Logger logger = Logger.getLogger(PrefixAnalyser.class.getName());
@@ -20,7 +22,11 @@ public abstract class PrefixAnalyser<S> implements Analyser<S> {
     protected final BoundVerdict verdict;
     // CHECKSTYLE.ON: VisibilityModifier
 
-    private int iterations = 0;
+    private final MutableBounds updateResult = new MutableBounds();
+    @Nullable
+    private MemoryGuard memoryGuard = null;
+    private boolean memoryExhausted = false;
+    private long iterations = 0;
     private long time;
 
     public PrefixAnalyser(Explorer<S> explorer, int stepBound, PrefixValues values, BoundVerdict verdict) {
@@ -41,7 +47,8 @@ public abstract class PrefixAnalyser<S> implements Analyser<S> {
 
     @Override
     public PartialSystem model() {
-        return new PartialSystem(explorer.partialSystem(), explorer.exploredStates());
+        // A copy, since the explorer may be shared with later analyses
+        return new PartialSystem(explorer.partialSystem(), StateSets.modifiableCopyOf(explorer.exploredStates()));
     }
 
     @Override
@@ -51,10 +58,20 @@ public abstract class PrefixAnalyser<S> implements Analyser<S> {
 
     @Override
     public PrefixAnalyser<S> run() {
+        return run(Long.MAX_VALUE);
+    }
+
+    @Override
+    public PrefixAnalyser<S> run(long maximalRounds) {
         time = System.currentTimeMillis();
+        long rounds = 0L;
         for (int initialState : explorer.initialStateIds()) {
             while (!verdict.isSolved(values.bounds(initialState, stepBound))) {
-                getPairs(initialState).pairs.forEach(p -> p.update(values));
+                if (isMemoryExhausted() || rounds == maximalRounds) {
+                    break;
+                }
+                rounds += 1;
+                getPairs(initialState).pairs.forEach(p -> p.update(values, updateResult));
                 iterations += 1;
                 logUpdate(false);
             }
@@ -63,6 +80,30 @@ public abstract class PrefixAnalyser<S> implements Analyser<S> {
         return this;
     }
 
+    @Override
+    public boolean isFinished() {
+        return isMemoryExhausted()
+                || explorer.initialStateIds()
+                        .intStream()
+                        .allMatch(s -> verdict.isSolved(values.bounds(s, stepBound)));
+    }
+
+    /**
+     * Stop the analysis once the guard reports that the memory budget is exceeded, see {@link
+     * CollapsingAnalyser#setMemoryGuard(MemoryGuard)}.
+     */
+    public void setMemoryGuard(@Nullable MemoryGuard memoryGuard) {
+        this.memoryGuard = memoryGuard;
+    }
+
+    public boolean isMemoryExhausted() {
+        if (!memoryExhausted && memoryGuard != null && memoryGuard.isExhausted()) {
+            logger.log(Level.WARNING, "Memory budget exceeded, stopping with current bounds");
+            memoryExhausted = true;
+        }
+        return memoryExhausted;
+    }
+
     private void logUpdate(boolean force) {
         if (!logger.isLoggable(Level.INFO)) {
             return;
@@ -86,11 +127,39 @@ public abstract class PrefixAnalyser<S> implements Analyser<S> {
 
     protected abstract SamplingResult getPairs(int initialState);
 
+    public PrefixStatistics statistics() {
+        return new PrefixStatistics(this);
+    }
+
     public record SamplingResult(Stream<Pair> pairs) {}
 
     public record Pair(int state, int remaining, List<Choice> choices, Choice choice) {
         public Bounds update(PrefixValues values) {
             return values.update(state, remaining, choices, choice);
         }
+
+        public void update(PrefixValues values, MutableBounds result) {
+            values.update(state, remaining, choices, choice, result);
+        }
+    }
+
+    public static class PrefixStatistics {
+        // CHECKSTYLE.OFF: VisibilityModifier
+        public final int exploredStates;
+        public final long iterations;
+        public final boolean memoryExhausted;
+        // CHECKSTYLE.ON: VisibilityModifier
+
+        public PrefixStatistics(PrefixAnalyser<?> analyser) {
+            this.exploredStates = analyser.explorer().exploredStateCount();
+            this.iterations = analyser.iterations;
+            this.memoryExhausted = analyser.memoryExhausted;
+        }
+
+        @Override
+        public String toString() {
+            return "%d explored states in %d iterations".formatted(exploredStates, iterations)
+                    + (memoryExhausted ? "%nStopped due to memory budget".formatted() : "");
+        }
     }
 }
@@ -0,0 +1,262 @@
+package de.tum.in.pet.analyser;
+
+import de.tum.in.probmodels.explorer.Explorer;
+import de.tum.in.probmodels.model.Choice;
+import de.tum.in.probmodels.problem.query.Optimization;
+import de.tum.in.probmodels.problem.verdict.BoundVerdict;
+import de.tum.in.probmodels.values.Bounds;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Explores all states reachable within the step bound and computes the values by a backward sweep over the explored
+ * subsystem, one layer of remaining steps at a time. The subsystem is flattened into primitive arrays once, so each
+ * layer is a (parallel) sparse matrix-vector product instead of a series of map lookups.
+ */
+public final class PrefixGlobalAnalyser<S> extends PrefixAnalyser<S> {
+    private static final Logger logger = Logger.getLogger(PrefixGlobalAnalyser.class.getName());
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    private boolean computed = false;
+
+    public PrefixGlobalAnalyser(Explorer<S> explorer, int stepBound, PrefixValues values, BoundVerdict verdict) {
+        super(explorer, stepBound, values, verdict);
+    }
+
+    /**
+     * A single layered iteration computes the values of all initial states, further rounds would not change them.
+     */
+    @Override
+    public PrefixGlobalAnalyser<S> run(long maximalRounds) {
+        if (computed) {
+            return this;
+        }
+        computed = true;
+        compute(exploreLayers());
+        for (int initialState : explorer.initialStateIds()) {
+            if (!verdict.isSolved(bounds(initialState))) {
+                logger.log(
+                        Level.WARNING,
+                        "Layered iteration did not solve the initial state {0}: {1}",
+                        new Object[] {initialState, bounds(initialState)});
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return computed || super.isFinished();
+    }
+
+    @Override
+    protected SamplingResult getPairs(int initialState) {
+        compute(exploreLayers());
+        return new SamplingResult(Stream.empty());
+    }
+
+    /**
+     * The expanded states in breadth-first order, where the states of depth d are the ones from {@code offsets[d]}
+     * until {@code offsets[d + 1]}.
+     */
+    private record Layers(IntList states, IntList offsets) {}
+
+    /**
+     * Explores all states reachable in less than the step bound.
+     */
+    private Layers exploreLayers() {
+        IntList expanded = new IntArrayList();
+        IntList offsets = new IntArrayList();
+        IntSet reached = new IntOpenHashSet(explorer.initialStateIds());
+        IntList layer = new IntArrayList(reached);
+        for (int depth = 0; depth < stepBound && !layer.isEmpty(); depth++) {
+            offsets.add(expanded.size());
+            IntList nextLayer = new IntArrayList();
+            IntIterator iterator = layer.iterator();
+            while (iterator.hasNext()) {
+                int state = iterator.nextInt();
+                if (values.isFixed(state)) {
+                    continue;
+                }
+                if (!explorer.isExploredState(state)) {
+                    explorer.exploreState(state);
+                }
+                expanded.add(state);
+                for (Choice choice : explorer.choices(state)) {
+                    IntIterator successors = choice.distribution().support().iterator();
+                    while (successors.hasNext()) {
+                        int successor = successors.nextInt();
+                        if (reached.add(successor)) {
+                            nextLayer.add(successor);
+                        }
+                    }
+                }
+            }
+            layer = nextLayer;
+        }
+        offsets.add(expanded.size());
+        return new Layers(expanded, offsets);
+    }
+
+    /**
+     * Computes the values of all expanded states for all remaining steps. A state of depth d only is stored for its
+     * remaining steps k - d: Within these, it cannot reach a non-expanded state with positive remaining steps, whose
+     * stored bounds may be approximate, hence the computed value is exact.
+     */
+    private void compute(Layers layers) {
+        IntList expanded = layers.states();
+        // Rows are the expanded states, followed by all other referenced states, whose values are read from the stored
+        // bounds for each number of remaining steps
+        int rowCount = expanded.size();
+        Int2IntMap index = new Int2IntOpenHashMap(rowCount * 2);
+        index.defaultReturnValue(-1);
+        IntList columns = new IntArrayList(expanded);
+        for (int row = 0; row < rowCount; row++) {
+            index.put(expanded.getInt(row), row);
+        }
+        int[] choiceOffsets = new int[rowCount + 1];
+        IntList transitionOffsets = new IntArrayList();
+        IntList targets = new IntArrayList();
+        DoubleList probabilities = new DoubleArrayList();
+        for (int row = 0; row < rowCount; row++) {
+            int state = expanded.getInt(row);
+            for (Choice choice : explorer.choices(state)) {
+                if (values.isIgnored(state, choice)) {
+                    continue;
+                }
+                transitionOffsets.add(targets.size());
+                choice.distribution().forEach((successor, probability) -> {
+                    int column = index.get(successor);
+                    if (column == -1) {
+                        column = columns.size();
+                        index.put(successor, column);
+                        columns.add(successor);
+                    }
+                    targets.add(column);
+                    probabilities.add(probability);
+                });
+            }
+            choiceOffsets[row + 1] = transitionOffsets.size();
+        }
+        transitionOffsets.add(targets.size());
+
+        Matrix matrix = new Matrix(
+                rowCount,
+                choiceOffsets,
+                transitionOffsets.toIntArray(),
+                targets.toIntArray(),
+                probabilities.toDoubleArray(),
+                values.optimization() == Optimization.MIN_VALUE);
+        logger.log(
+                Level.INFO,
+                "Layered iteration over {0} states ({1} not expanded) with {2} transitions",
+                new Object[] {rowCount, columns.size() - rowCount, targets.size()});
+
+        int columnCount = columns.size();
+        // Fixed states have the same value for any number of remaining steps, all others are queried for each layer
+        IntList boundaryColumns = new IntArrayList();
+        double[] lower = new double[columnCount];
+        double[] upper = new double[columnCount];
+        double[] nextLower = new double[columnCount];
+        double[] nextUpper = new double[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            int state = columns.getInt(column);
+            Bounds initial = values.bounds(state, 0);
+            lower[column] = initial.lowerBound();
+            upper[column] = initial.upperBound();
+            if (column >= rowCount) {
+                if (values.isFixed(state)) {
+                    nextLower[column] = initial.lowerBound();
+                    nextUpper[column] = initial.upperBound();
+                } else {
+                    boundaryColumns.add(column);
+                }
+            }
+        }
+
+        IntList offsets = layers.offsets();
+        for (int remaining = 1; remaining <= stepBound; remaining++) {
+            double[] currentLower = lower;
+            double[] currentUpper = upper;
+            double[] updatedLower = nextLower;
+            double[] updatedUpper = nextUpper;
+            if (remaining > 1) {
+                IntIterator boundary = boundaryColumns.iterator();
+                while (boundary.hasNext()) {
+                    int column = boundary.nextInt();
+                    Bounds bounds = values.bounds(columns.getInt(column), remaining - 1);
+                    currentLower[column] = bounds.lowerBound();
+                    currentUpper[column] = bounds.upperBound();
+                }
+            }
+            IntStream rows = IntStream.range(0, rowCount);
+            if (rowCount >= PARALLEL_THRESHOLD) {
+                rows = rows.parallel();
+            }
+            rows.forEach(row -> matrix.multiply(row, currentLower, currentUpper, updatedLower, updatedUpper));
+
+            int depth = stepBound - remaining;
+            if (depth < offsets.size() - 1) {
+                for (int row = offsets.getInt(depth); row < offsets.getInt(depth + 1); row++) {
+                    values.set(expanded.getInt(row), remaining, updatedLower[row], updatedUpper[row]);
+                }
+            }
+            lower = updatedLower;
+            upper = updatedUpper;
+            nextLower = currentLower;
+            nextUpper = currentUpper;
+        }
+    }
+
+    private record Matrix(
+            int rowCount,
+            int[] choiceOffsets,
+            int[] transitionOffsets,
+            int[] targets,
+            double[] probabilities,
+            boolean minimize) {
+        void multiply(int row, double[] lower, double[] upper, double[] nextLower, double[] nextUpper) {
+            int choiceStart = choiceOffsets[row];
+            int choiceEnd = choiceOffsets[row + 1];
+            if (choiceStart == choiceEnd) {
+                nextLower[row] = 0.0d;
+                nextUpper[row] = 0.0d;
+                return;
+            }
+
+            double optimalLower = minimize ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+            double optimalUpper = optimalLower;
+            for (int choice = choiceStart; choice < choiceEnd; choice++) {
+                double choiceLower = 0.0d;
+                double choiceUpper = 0.0d;
+                int transitionEnd = transitionOffsets[choice + 1];
+                for (int transition = transitionOffsets[choice]; transition < transitionEnd; transition++) {
+                    double probability = probabilities[transition];
+                    int target = targets[transition];
+                    choiceLower += probability * lower[target];
+                    choiceUpper += probability * upper[target];
+                }
+                if (minimize) {
+                    optimalLower = Math.min(optimalLower, choiceLower);
+                    optimalUpper = Math.min(optimalUpper, choiceUpper);
+                } else {
+                    optimalLower = Math.max(optimalLower, choiceLower);
+                    optimalUpper = Math.max(optimalUpper, choiceUpper);
+                }
+            }
+            nextLower[row] = optimalLower;
+            nextUpper[row] = optimalUpper;
+        }
+    }
+}
@@ -10,13 +10,31 @@ import java.util.Deque;
 import java.util.List;
 
 public class PrefixSampler<S> extends PrefixAnalyser<S> {
+    private final SamplingController controller;
+
     public PrefixSampler(Explorer<S> explorer, int stepBound, PrefixValues values, BoundVerdict verdict) {
+        this(explorer, stepBound, values, verdict, SamplingController.fixed(SamplingController.PREFIX_DEFAULT));
+    }
+
+    public PrefixSampler(
+            Explorer<S> explorer,
+            int stepBound,
+            PrefixValues values,
+            BoundVerdict verdict,
+            SamplingController controller) {
         super(explorer, stepBound, values, verdict);
+        this.controller = controller;
+    }
+
+    @Override
+    public PrefixStatistics statistics() {
+        return new PrefixSamplerStatistics(this);
     }
 
     @Override
     protected SamplingResult getPairs(int initialState) {
         Deque<Pair> samples = new ArrayDeque<>();
+        int maxExplores = controller.select(values.difference(initialState, stepBound)).maxExplores();
 
         int exploreCount = 0;
         int currentState = initialState;
@@ -38,7 +56,7 @@ public class PrefixSampler<S> extends PrefixAnalyser<S> {
                 break;
             }
             if (!explorer.isExploredState(nextState)) {
-                if (exploreCount == 5) {
+                if (exploreCount >= maxExplores) {
                     break;
                 }
                 exploreCount += 1;
@@ -50,4 +68,20 @@ public class PrefixSampler<S> extends PrefixAnalyser<S> {
         }
         return new SamplingResult(samples.stream());
     }
+
+    public static class PrefixSamplerStatistics extends PrefixStatistics {
+        // CHECKSTYLE.OFF: VisibilityModifier
+        public final Object controller;
+        // CHECKSTYLE.ON: VisibilityModifier
+
+        public PrefixSamplerStatistics(PrefixSampler<?> sampler) {
+            super(sampler);
+            this.controller = sampler.controller.statistics();
+        }
+
+        @Override
+        public String toString() {
+            return "%s%nSampling control: %s".formatted(super.toString(), controller);
+        }
+    }
 }
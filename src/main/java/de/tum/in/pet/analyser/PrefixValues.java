@@ -1,6 +1,7 @@
 package de.tum.in.pet.analyser;
 
 import de.tum.in.probmodels.model.Choice;
+import de.tum.in.probmodels.problem.query.Optimization;
 import de.tum.in.probmodels.values.Bounds;
 import java.util.List;
 import java.util.function.ToDoubleFunction;
@@ -45,4 +46,36 @@ public interface PrefixValues {
      * Update the values for the given state and selected choice.
      */
     Bounds update(int state, int remaining, List<Choice> choices, Choice selected);
+
+    /**
+     * Update the values like {@link #update(int, int, List, Choice)}, but write the new bounds into the given holder.
+     * Implementations should override this method to avoid allocation, it is the one used by the analysers.
+     */
+    default void update(int state, int remaining, List<Choice> choices, Choice selected, MutableBounds result) {
+        result.set(update(state, remaining, choices, selected));
+    }
+
+    /**
+     * The optimization applied over the choices of a state. Together with {@link #isFixed(int)} and
+     * {@link #isIgnored(int, Choice)}, this determines how {@link #update(int, int, List, Choice)} combines the
+     * successor values and allows to compute values in bulk (see {@link PrefixGlobalAnalyser}).
+     */
+    Optimization optimization();
+
+    /**
+     * Returns true iff the bounds of this state do not depend on the remaining steps (e.g. goal or sink states).
+     */
+    boolean isFixed(int state);
+
+    /**
+     * Returns true iff the given choice is not considered when updating the state (e.g. self-loops).
+     */
+    default boolean isIgnored(int state, Choice choice) {
+        return false;
+    }
+
+    /**
+     * Store the given bounds for the state, which are obtained by other means than updates. Bounds are only tightened.
+     */
+    void set(int state, int remaining, double lowerBound, double upperBound);
 }
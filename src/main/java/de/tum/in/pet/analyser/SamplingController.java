@@ -0,0 +1,56 @@
+package de.tum.in.pet.analyser;
+
+/**
+ * Chooses the parameters of the sampling heuristics at runtime.
+ */
+public interface SamplingController {
+    Parameters COLLAPSING_DEFAULT = new Parameters(4, 4, 1.0d);
+    Parameters PREFIX_DEFAULT = new Parameters(4, 5, 1.0d);
+    long DEFAULT_SEED = 1234L;
+
+    static SamplingController fixed(Parameters parameters) {
+        return new Fixed(parameters, DEFAULT_SEED);
+    }
+
+    static SamplingController fixed(Parameters parameters, long seed) {
+        return new Fixed(parameters, seed);
+    }
+
+    /**
+     * The parameters to use for the next sampling round, given the current difference of the bounds in the initial
+     * state. Called exactly once per round.
+     */
+    Parameters select(double gap);
+
+    /**
+     * Description of the decisions taken so far, included in the analyser statistics.
+     */
+    Object statistics();
+
+    /**
+     * Seed of the random decisions taken by the sampler itself, so that runs are reproducible.
+     */
+    long seed();
+
+    /**
+     * @param maxBacktracks
+     *     Number of backtracks within one sample before giving up on the sample.
+     * @param maxExplores
+     *     Number of states explored within one sample.
+     * @param collapseScale
+     *     Factor for the number of samples between two searches for components.
+     */
+    record Parameters(int maxBacktracks, int maxExplores, double collapseScale) {}
+
+    record Fixed(Parameters parameters, long seed) implements SamplingController {
+        @Override
+        public Parameters select(double gap) {
+            return parameters;
+        }
+
+        @Override
+        public Object statistics() {
+            return parameters;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package de.tum.in.pet.analyser;
+
+import de.tum.in.probmodels.model.distribution.Distribution;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Maintains sum trees over the weights {@code p * difference(s)} of distributions with many successors, so that
+ * sampling a successor takes logarithmic instead of linear time. Weights are refreshed whenever the analyser reports an
+ * updated state; in addition, the weight of every sampled successor is checked against its current value, so weights
+ * which became stale by other means are corrected when they are hit. Trees are identified by the state and the index
+ * of the distribution among the choices of the state, hence the index has to be cleared whenever the quotient changes
+ * its distributions.
+ */
+final class SamplingIndex {
+    static final int MINIMAL_SUPPORT = 32;
+
+    private final Int2ObjectMap<Tree[]> trees = new Int2ObjectOpenHashMap<>();
+    private final Int2ObjectMap<List<Occurrence>> occurrences = new Int2ObjectOpenHashMap<>();
+    private final IntToDoubleFunction difference;
+    private final Random random;
+    private final IntList excluded = new IntArrayList();
+
+    SamplingIndex(IntToDoubleFunction difference, long seed) {
+        this.difference = difference;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Samples a successor of the given distribution of the state proportional to its weight, ignoring excluded
+     * successors. The distribution has to be the one at the given index of the current distributions of the state, a
+     * negative index samples without index. Returns -1 if all weights are zero.
+     */
+    int sampleExcept(int state, int choice, Distribution distribution, IntPredicate exclude) {
+        if (distribution.size() < MINIMAL_SUPPORT || choice < 0) {
+            return distribution.sampleWeightedExcept((s, p) -> p * difference.applyAsDouble(s), exclude);
+        }
+        Tree tree = tree(state, choice, distribution);
+
+        int sampled = -2;
+        int attempts = 2 * tree.size() + 1;
+        while (sampled == -2 && attempts > 0) {
+            attempts -= 1;
+            if (tree.total() <= 0.0d) {
+                // Weights may be stale, e.g. when the difference function changed its meaning, hence recompute them
+                // and sample exactly
+                reweigh(tree);
+                break;
+            }
+            double total = tree.total();
+            int index = tree.find(random.nextDouble() * total);
+            if (tree.weight(index) <= 0.0d) {
+                // Accumulated rounding errors
+                tree.rebuild();
+                continue;
+            }
+            int successor = tree.successor(index);
+            if (exclude.test(successor)) {
+                tree.set(index, 0.0d);
+                excluded.add(index);
+                continue;
+            }
+            double weight = tree.probability(index) * difference.applyAsDouble(successor);
+            if (weight == tree.weight(index)) {
+                sampled = successor;
+            } else {
+                tree.set(index, weight);
+            }
+        }
+
+        for (int i = 0; i < excluded.size(); i++) {
+            int index = excluded.getInt(i);
+            tree.set(index, tree.probability(index) * difference.applyAsDouble(tree.successor(index)));
+        }
+        excluded.clear();
+
+        return sampled == -2
+                ? distribution.sampleWeightedExcept((s, p) -> p * difference.applyAsDouble(s), exclude)
+                : sampled;
+    }
+
+    /**
+     * Notify that the bounds of the given state changed.
+     */
+    void refresh(int state) {
+        List<Occurrence> stateOccurrences = occurrences.get(state);
+        if (stateOccurrences == null) {
+            return;
+        }
+        double stateDifference = difference.applyAsDouble(state);
+        for (Occurrence occurrence : stateOccurrences) {
+            Tree tree = occurrence.tree();
+            tree.set(occurrence.index(), tree.probability(occurrence.index()) * stateDifference);
+        }
+    }
+
+    void clear() {
+        trees.clear();
+        occurrences.clear();
+    }
+
+    private Tree tree(int state, int choice, Distribution distribution) {
+        Tree[] stateTrees = trees.get(state);
+        if (stateTrees == null || stateTrees.length <= choice) {
+            stateTrees = stateTrees == null ? new Tree[choice + 1] : Arrays.copyOf(stateTrees, choice + 1);
+            trees.put(state, stateTrees);
+        }
+        Tree tree = stateTrees[choice];
+        if (tree == null) {
+            tree = build(distribution);
+            stateTrees[choice] = tree;
+        }
+        assert tree.size() == distribution.size();
+        return tree;
+    }
+
+    private void reweigh(Tree tree) {
+        for (int index = 0; index < tree.size(); index++) {
+            tree.weights[index] = tree.probability(index) * difference.applyAsDouble(tree.successor(index));
+        }
+        tree.rebuild();
+    }
+
+    private Tree build(Distribution distribution) {
+        int size = distribution.size();
+        int[] successors = new int[size];
+        double[] probabilities = new double[size];
+        int[] position = {0};
+        distribution.forEach((successor, probability) -> {
+            successors[position[0]] = successor;
+            probabilities[position[0]] = probability;
+            position[0] += 1;
+        });
+        Tree tree = new Tree(successors, probabilities);
+        for (int index = 0; index < size; index++) {
+            tree.weights[index] = probabilities[index] * difference.applyAsDouble(successors[index]);
+            occurrences
+                    .computeIfAbsent(successors[index], s -> new ArrayList<>(1))
+                    .add(new Occurrence(tree, index));
+        }
+        tree.rebuild();
+        return tree;
+    }
+
+    private record Occurrence(Tree tree, int index) {}
+
+    /**
+     * Fenwick tree over the successor weights.
+     */
+    static final class Tree {
+        private final int[] successors;
+        private final double[] probabilities;
+        private final double[] weights;
+        private final double[] sums;
+        private double total = 0.0d;
+
+        Tree(int[] successors, double[] probabilities) {
+            this.successors = successors;
+            this.probabilities = probabilities;
+            this.weights = new double[successors.length];
+            this.sums = new double[successors.length + 1];
+        }
+
+        int size() {
+            return successors.length;
+        }
+
+        int successor(int index) {
+            return successors[index];
+        }
+
+        double probability(int index) {
+            return probabilities[index];
+        }
+
+        double weight(int index) {
+            return weights[index];
+        }
+
+        double total() {
+            return total;
+        }
+
+        void set(int index, double weight) {
+            double delta = weight - weights[index];
+            if (delta == 0.0d) {
+                return;
+            }
+            weights[index] = weight;
+            total += delta;
+            for (int node = index + 1; node < sums.length; node += node & -node) {
+                sums[node] += delta;
+            }
+        }
+
+        /**
+         * Finds the first index such that the sum of the weights up to and including it exceeds the given value.
+         */
+        int find(double value) {
+            int position = 0;
+            double remaining = value;
+            for (int step = Integer.highestOneBit(successors.length); step > 0; step >>= 1) {
+                int next = position + step;
+                if (next < sums.length && sums[next] <= remaining) {
+                    position = next;
+                    remaining -= sums[next];
+                }
+            }
+            return Math.min(position, successors.length - 1);
+        }
+
+        void rebuild() {
+            total = 0.0d;
+            for (int index = 0; index < weights.length; index++) {
+                sums[index + 1] = weights[index];
+                total += weights[index];
+            }
+            for (int node = 1; node < sums.length; node++) {
+                int parent = node + (node & -node);
+                if (parent < sums.length) {
+                    sums[parent] += sums[node];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package de.tum.in.pet.analyser;
+
+import de.tum.in.naturals.map.Nat2DoubleDenseArrayMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2FloatOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntCollection;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Stores one bound per state. Single precision storage halves the memory footprint and rounds every stored value
+ * outward, i.e. lower bounds down and upper bounds up, so that stored bounds remain sound.
+ */
+public abstract class ValueStorage implements IntToDoubleFunction {
+    // Outward rounding widens every stored gap by up to one unit in the last place per update
+    private static final int ROUNDING_DOMINANCE = 16;
+
+    public enum Rounding {
+        DOWN,
+        UP
+    }
+
+    public static ValueStorage create(boolean singlePrecision, boolean dense, Rounding rounding, double defaultValue) {
+        if (singlePrecision) {
+            return dense
+                    ? new DenseFloatStorage(rounding, (float) defaultValue)
+                    : new SparseFloatStorage(rounding, (float) defaultValue);
+        }
+        return new DoubleStorage(dense, defaultValue);
+    }
+
+    /**
+     * Rounds the value to the nearest float in the given direction.
+     */
+    public static float round(double value, Rounding rounding) {
+        float rounded = (float) value;
+        if (rounding == Rounding.DOWN) {
+            return rounded > value ? Math.nextDown(rounded) : rounded;
+        }
+        return rounded < value ? Math.nextUp(rounded) : rounded;
+    }
+
+    /**
+     * Returns true iff the gap between the given bounds is within a few units in the last place of single precision
+     * values of their magnitude. Outward rounding may then prevent the gap from shrinking any further.
+     */
+    public static boolean isRoundingDominated(double lowerBound, double upperBound) {
+        float magnitude = (float) Math.max(Math.abs(lowerBound), Math.abs(upperBound));
+        return upperBound - lowerBound <= ROUNDING_DOMINANCE * Math.ulp(magnitude);
+    }
+
+    public abstract double get(int state);
+
+    public abstract void put(int state, double value);
+
+    public abstract void removeAll(IntCollection states);
+
+    /**
+     * Returns a storage with the same values in double precision, which is this storage if it already is one.
+     */
+    public abstract ValueStorage toDoublePrecision();
+
+    /**
+     * Returns a storage with the values rounded outward to single precision in the given direction, which is this
+     * storage if it already is one.
+     */
+    public abstract ValueStorage toSinglePrecision(Rounding rounding);
+
+    @Override
+    public double applyAsDouble(int state) {
+        return get(state);
+    }
+
+    private static final class DoubleStorage extends ValueStorage {
+        private final boolean dense;
+        private final Int2DoubleMap map;
+
+        DoubleStorage(boolean dense, double defaultValue) {
+            this.dense = dense;
+            map = dense ? new Nat2DoubleDenseArrayMap(1024) : new Int2DoubleOpenHashMap(1024);
+            map.defaultReturnValue(defaultValue);
+        }
+
+        @Override
+        public double get(int state) {
+            return map.get(state);
+        }
+
+        @Override
+        public void put(int state, double value) {
+            map.put(state, value);
+        }
+
+        @Override
+        public void removeAll(IntCollection states) {
+            map.keySet().removeAll(states);
+        }
+
+        @Override
+        public ValueStorage toDoublePrecision() {
+            return this;
+        }
+
+        @Override
+        public ValueStorage toSinglePrecision(Rounding rounding) {
+            ValueStorage storage = create(true, dense, rounding, map.defaultReturnValue());
+            map.keySet().forEach((int state) -> storage.put(state, map.get(state)));
+            return storage;
+        }
+
+        @Override
+        public String toString() {
+            return "double";
+        }
+    }
+
+    private static final class DenseFloatStorage extends ValueStorage {
+        private final Rounding rounding;
+        private final float defaultValue;
+        private float[] values = new float[1024];
+
+        DenseFloatStorage(Rounding rounding, float defaultValue) {
+            this.rounding = rounding;
+            this.defaultValue = defaultValue;
+            Arrays.fill(values, defaultValue);
+        }
+
+        @Override
+        public double get(int state) {
+            return state < values.length ? values[state] : defaultValue;
+        }
+
+        @Override
+        public void put(int state, double value) {
+            if (values.length <= state) {
+                int oldLength = values.length;
+                values = Arrays.copyOf(values, Math.max(oldLength * 2, state + 1));
+                Arrays.fill(values, oldLength, values.length, defaultValue);
+            }
+            values[state] = round(value, rounding);
+        }
+
+        @Override
+        public void removeAll(IntCollection states) {
+            states.forEach((int state) -> {
+                if (state < values.length) {
+                    values[state] = defaultValue;
+                }
+            });
+        }
+
+        @Override
+        public ValueStorage toDoublePrecision() {
+            ValueStorage storage = new DoubleStorage(true, defaultValue);
+            for (int state = 0; state < values.length; state++) {
+                // Also compares NaN defaults
+                if (Float.compare(values[state], defaultValue) != 0) {
+                    storage.put(state, values[state]);
+                }
+            }
+            return storage;
+        }
+
+        @Override
+        public ValueStorage toSinglePrecision(Rounding rounding) {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "float";
+        }
+    }
+
+    private static final class SparseFloatStorage extends ValueStorage {
+        private final Rounding rounding;
+        private final Int2FloatOpenHashMap map = new Int2FloatOpenHashMap(1024);
+
+        SparseFloatStorage(Rounding rounding, float defaultValue) {
+            this.rounding = rounding;
+            map.defaultReturnValue(defaultValue);
+        }
+
+        @Override
+        public double get(int state) {
+            return map.get(state);
+        }
+
+        @Override
+        public void put(int state, double value) {
+            map.put(state, round(value, rounding));
+        }
+
+        @Override
+        public void removeAll(IntCollection states) {
+            states.forEach((int state) -> map.remove(state));
+        }
+
+        @Override
+        public ValueStorage toDoublePrecision() {
+            ValueStorage storage = new DoubleStorage(false, map.defaultReturnValue());
+            map.keySet().forEach((int state) -> storage.put(state, map.get(state)));
+            return storage;
+        }
+
+        @Override
+        public ValueStorage toSinglePrecision(Rounding rounding) {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "float";
+        }
+    }
+}
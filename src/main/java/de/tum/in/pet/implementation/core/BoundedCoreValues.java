@@ -4,16 +4,26 @@ import static de.tum.in.probmodels.util.Util.isEqual;
 import static de.tum.in.probmodels.util.Util.isOne;
 import static de.tum.in.probmodels.util.Util.lessOrEqual;
 
+import de.tum.in.pet.analyser.MutableBounds;
 import de.tum.in.pet.analyser.PrefixValues;
+import de.tum.in.pet.analyser.ValueStorage;
 import de.tum.in.probmodels.model.Choice;
+import de.tum.in.probmodels.problem.query.Optimization;
 import de.tum.in.probmodels.values.Bounds;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.ToDoubleFunction;
 
 abstract class BoundedCoreValues implements PrefixValues {
+    // Reused for all passes over successors, so that the hot path does not allocate
+    private int successorRemaining = 0;
+    private final IntToDoubleFunction successorUpperBound = s -> upperBound(s, successorRemaining);
+    private final ToDoubleFunction<Choice> upperScore =
+            choice -> choice.distribution().sumWeighted(successorUpperBound);
+
     @Override
     public abstract double upperBound(int state, int remaining);
 
@@ -34,28 +44,60 @@ abstract class BoundedCoreValues implements PrefixValues {
 
     @Override
     public ToDoubleFunction<Choice> score(int state, int remaining, List<Choice> choices) {
-        return choice -> choice.distribution().sumWeighted(s -> upperBound(s, remaining - 1));
+        successorRemaining = remaining - 1;
+        return upperScore;
     }
 
     @Override
     public Bounds update(int state, int remaining, List<Choice> choices, Choice selected) {
+        return Bounds.reach(0.0, updateUpperBound(state, remaining, choices));
+    }
+
+    @Override
+    public void update(int state, int remaining, List<Choice> choices, Choice selected, MutableBounds result) {
+        result.set(0.0, updateUpperBound(state, remaining, choices));
+    }
+
+    private double updateUpperBound(int state, int remaining, List<Choice> choices) {
+        successorRemaining = remaining - 1;
         double max = 0.0;
         for (Choice choice : choices) {
             if (choice.distribution().isOnlySuccessor(state)) {
                 continue;
             }
 
-            double v = choice.distribution().sumWeighted(s -> upperBound(s, remaining - 1));
+            double v = choice.distribution().sumWeighted(successorUpperBound);
             if (v > max) {
                 max = v;
             }
         }
         update(state, remaining, max);
-        return Bounds.reach(0.0, max);
+        return max;
     }
 
     abstract void update(int state, int remaining, double bound);
 
+    @Override
+    public Optimization optimization() {
+        return Optimization.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isFixed(int state) {
+        return false;
+    }
+
+    @Override
+    public boolean isIgnored(int state, Choice choice) {
+        return choice.distribution().isOnlySuccessor(state);
+    }
+
+    @Override
+    public void set(int state, int remaining, double lowerBound, double upperBound) {
+        assert remaining > 0;
+        update(state, remaining, Math.min(upperBound, upperBound(state, remaining)));
+    }
+
     public static class Simple extends BoundedCoreValues {
         private static final int ONE_STEP_THRESHOLD = 6;
 
@@ -208,4 +250,169 @@ abstract class BoundedCoreValues implements PrefixValues {
             return "DenseValues";
         }
     }
+
+    /**
+     * Like {@link Dense}, but stores the bounds in single precision, rounded up.
+     */
+    public static class DenseFloat extends BoundedCoreValues {
+        private final Int2ObjectMap<float[]> stateBounds = new Int2ObjectOpenHashMap<>();
+
+        @Override
+        public double upperBound(int state, int remaining) {
+            if (remaining == 0) {
+                return 0.0d;
+            }
+            int index = remaining - 1;
+            float[] values = stateBounds.get(state);
+            return values == null || values.length <= index ? 1.0d : values[index];
+        }
+
+        @Override
+        void update(int state, int remaining, double bound) {
+            if (isOne(bound)) {
+                assert isOne(upperBound(state, remaining));
+                return;
+            }
+            float value = ValueStorage.round(bound, ValueStorage.Rounding.UP);
+
+            int index = remaining - 1;
+            int monotonicityUpdate;
+            float[] values = stateBounds.get(state);
+            if (values == null) {
+                values = new float[index + 1];
+                Arrays.fill(values, value);
+                monotonicityUpdate = 0;
+
+                stateBounds.put(state, values);
+            } else if (values.length <= index) {
+                int oldLength = values.length;
+                int newLength = Math.max(oldLength * 2, index + 1);
+                values = Arrays.copyOf(values, newLength);
+                Arrays.fill(values, oldLength, index + 1, value);
+                Arrays.fill(values, index + 1, newLength, 1.0f);
+                monotonicityUpdate = oldLength;
+
+                stateBounds.put(state, values);
+            } else {
+                float oldValue = values[index];
+                // Check monotonicity of added value
+                assert lessOrEqual(bound, oldValue) : "Updating %f to %f".formatted(oldValue, bound);
+                if (oldValue <= value) {
+                    return;
+                }
+                values[index] = value;
+                monotonicityUpdate = index;
+            }
+
+            for (int i = monotonicityUpdate - 1; i >= 0; i--) {
+                float v = values[i];
+                if (v > value) {
+                    values[i] = value;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "DenseFloatValues";
+        }
+    }
+
+    public static class Sparse extends BoundedCoreValues {
+        private final Int2ObjectMap<Breakpoints> stateBounds = new Int2ObjectOpenHashMap<>();
+
+        @Override
+        public double upperBound(int state, int remaining) {
+            if (remaining == 0) {
+                return 0.0d;
+            }
+            Breakpoints breakpoints = stateBounds.get(state);
+            return breakpoints == null ? 1.0d : breakpoints.get(remaining);
+        }
+
+        @Override
+        void update(int state, int remaining, double value) {
+            if (isOne(value)) {
+                assert isOne(upperBound(state, remaining));
+                return;
+            }
+
+            Breakpoints breakpoints = stateBounds.get(state);
+            if (breakpoints == null) {
+                breakpoints = new Breakpoints();
+                stateBounds.put(state, breakpoints);
+            }
+            breakpoints.update(remaining, value);
+        }
+
+        @Override
+        public String toString() {
+            return "SparseValues";
+        }
+    }
+
+    /**
+     * A non-decreasing step function over the remaining steps, stored as its breakpoints. The value for a number of
+     * remaining steps is the value of the first breakpoint at or above it, or one if there is none.
+     */
+    static final class Breakpoints {
+        private int[] steps = new int[2];
+        private double[] values = new double[2];
+        private int size = 0;
+
+        private int find(int remaining) {
+            int index = Arrays.binarySearch(steps, 0, size, remaining);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        double get(int remaining) {
+            int index = find(remaining);
+            return index == size ? 1.0d : values[index];
+        }
+
+        void update(int remaining, double value) {
+            int index = find(remaining);
+            if (index < size) {
+                // Check monotonicity of added value
+                assert lessOrEqual(value, values[index]) : "Updating %f to %f".formatted(values[index], value);
+                // The breakpoints are maintained with exact comparisons, the tolerance only applies to the check above
+                if (values[index] <= value) {
+                    return;
+                }
+            }
+
+            // Maintain monotonicity: All breakpoints below with a larger value are dominated by the new one
+            int start = index;
+            while (start > 0 && values[start - 1] >= value) {
+                start -= 1;
+            }
+            int removed = index - start;
+
+            if (index < size && steps[index] == remaining) {
+                values[index] = value;
+                System.arraycopy(steps, index, steps, start, size - index);
+                System.arraycopy(values, index, values, start, size - index);
+                size -= removed;
+            } else if (removed > 0) {
+                steps[start] = remaining;
+                values[start] = value;
+                System.arraycopy(steps, index, steps, start + 1, size - index);
+                System.arraycopy(values, index, values, start + 1, size - index);
+                size -= removed - 1;
+            } else {
+                if (size == steps.length) {
+                    steps = Arrays.copyOf(steps, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                System.arraycopy(steps, index, steps, index + 1, size - index);
+                System.arraycopy(values, index, values, index + 1, size - index);
+                steps[index] = remaining;
+                values[index] = value;
+                size += 1;
+            }
+            assert get(remaining) == value;
+        }
+    }
 }
@@ -2,69 +2,94 @@ package de.tum.in.pet.implementation.core;
 
 import static picocli.CommandLine.Command;
 import static picocli.CommandLine.Mixin;
+import static picocli.CommandLine.Spec;
 
 import com.google.common.base.Stopwatch;
-import de.tum.in.naturals.bitset.BitSets;
-import de.tum.in.naturals.set.NatBitSet;
-import de.tum.in.naturals.set.NatBitSets;
 import de.tum.in.pet.Main;
+import de.tum.in.pet.analyser.Analyser;
 import de.tum.in.pet.analyser.CollapsingAnalyser;
 import de.tum.in.pet.analyser.CollapsingSampler;
 import de.tum.in.pet.analyser.PartialSystem;
+import de.tum.in.pet.analyser.PrefixAnalyser;
 import de.tum.in.pet.analyser.PrefixSampler;
+import de.tum.in.pet.util.CheckerResult;
+import de.tum.in.pet.util.CoreFile;
+import de.tum.in.pet.util.MemoryBudgetMixin;
+import de.tum.in.pet.util.ModelHelper;
+import de.tum.in.pet.util.ModelOptions;
+import de.tum.in.pet.util.Ranges;
+import de.tum.in.pet.util.SamplingControlMixin;
+import de.tum.in.pet.util.SweepMixin;
+import de.tum.in.pet.util.ValueStorageMixin;
 import de.tum.in.probmodels.cli.DefaultCli;
 import de.tum.in.probmodels.explorer.DefaultExplorer;
 import de.tum.in.probmodels.explorer.Explorer;
 import de.tum.in.probmodels.explorer.SelfLoopHandling;
 import de.tum.in.probmodels.impl.prism.PrismModelMixin;
-import de.tum.in.probmodels.impl.prism.PrismWrappedException;
-import de.tum.in.probmodels.impl.prism.model.PrismModels;
 import de.tum.in.probmodels.output.DefaultStatistics;
 import de.tum.in.probmodels.output.ModelStatistics;
 import de.tum.in.probmodels.problem.ProblemInstance;
 import de.tum.in.probmodels.problem.verdict.QuantitativeVerdict;
 import de.tum.in.probmodels.util.Util;
-import explicit.DTMC;
-import explicit.DTMCModelChecker;
-import explicit.MDP;
-import explicit.MDPModelChecker;
-import explicit.ModelCheckerResult;
+import de.tum.in.probmodels.values.Bounds;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import java.io.IOException;
-import java.util.BitSet;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
-import prism.ModelType;
-import prism.Prism;
-import prism.PrismDevNullLog;
-import prism.PrismException;
-import prism.PrismSettings;
 
 @SuppressWarnings("PMD.ImmutableField")
 @Command(name = "core", mixinStandardHelpOptions = true)
-public final class CoreChecker extends DefaultCli<CoreChecker.CoreStatistics> {
+public final class CoreChecker extends DefaultCli<CheckerResult> {
     private static final Logger logger = Logger.getLogger(CoreChecker.class.getName());
+    private static final String EXPORT_CORE_OPTION = "--export-core";
+    private static final String EXPORT_EXPLICIT_OPTION = "--export-explicit";
+    private static final String EXPORT_BINARY_OPTION = "--export-binary";
 
     @Mixin
     private PrismModelMixin modelOption;
 
-    @Option(names = "--precision", description = "Precision (default: ${DEFAULT-VALUE})")
-    private double precision = Main.DEFAULT_PRECISION;
+    @Mixin
+    private SamplingControlMixin samplingControlOption;
+
+    @Mixin
+    private MemoryBudgetMixin memoryBudgetOption;
+
+    @Mixin
+    private SweepMixin sweepOption;
+
+    @Mixin
+    private ValueStorageMixin valueStorageOption;
+
+    @Spec
+    private CommandSpec spec;
+
+    @Option(
+            names = "--precision",
+            split = ",",
+            description = "Precision, a comma separated list yields nested unbounded cores (default: ${DEFAULT-VALUE})")
+    private List<Double> precisions = List.of(Main.DEFAULT_PRECISION);
 
     @Option(names = "--unbounded", description = "Build unbounded core")
     private boolean unboundedCore = false;
 
-    @Option(names = "--bounded", description = "Build bounded core")
+    @Option(
+            names = "--bounded",
+            description = "Build bounded cores for the given step bounds (comma separated, ranges as from..to[:step])")
     @Nullable
-    private Integer boundedCore = null;
+    private String boundedCore = null;
 
     @Option(
             names = "--bounded-update",
-            description = "Update mechanism for bounded core (dense or simple,n)",
+            description = "Update mechanism for bounded core (dense, sparse or simple,n)",
             hidden = true)
     private String boundedCoreStorage = "dense";
 
@@ -74,59 +99,81 @@ public final class CoreChecker extends DefaultCli<CoreChecker.CoreStatistics> {
     @Option(names = "--components", description = "Analyse components")
     private boolean componentAnalysis = false;
 
+    @Option(names = EXPORT_CORE_OPTION, description = "Write the unbounded core to the given file")
+    @Nullable
+    private Path coreFile = null;
+
+    @Option(
+            names = EXPORT_EXPLICIT_OPTION,
+            description = "Write the unbounded core model in PRISM's explicit format to the given transitions file, "
+                    + "the labels are written next to it with extension .lab")
+    @Nullable
+    private Path explicitFile = null;
+
+    @Option(
+            names = EXPORT_BINARY_OPTION,
+            description = "Write the unbounded core model in binary format to the given file")
+    @Nullable
+    private Path binaryFile = null;
+
     private CoreChecker() {
         // Empty
     }
 
     private static void checkCoreProperty(double precision, PartialSystem partialModel, int stepBound) {
         logger.log(Level.INFO, "Checking core property");
-        int initialState = partialModel.system().onlyInitialState();
-
-        NatBitSet fringeStates = NatBitSets.ensureModifiable(
-                NatBitSets.copyOf(partialModel.system().states()));
-        fringeStates.andNot(partialModel.exploredStates());
-        BitSet target = BitSets.of(fringeStates);
-        assert NatBitSets.asSet(target).intStream().noneMatch(partialModel.exploredStates()::contains);
-
-        var prismModel = PrismModels.asPrismModel(
-                partialModel.system(), partialModel.system().isDeterministic() ? ModelType.DTMC : ModelType.MDP);
+        var validator = CoreValidator.of(partialModel);
 
         double validationPrecision = precision * 0.001;
-        double reach;
-        try {
-            Prism mcPrism = new Prism(new PrismDevNullLog());
-            PrismSettings settings = new PrismSettings();
-            settings.set(PrismSettings.PRISM_TERM_CRIT, "Absolute");
-            settings.set(PrismSettings.PRISM_TERM_CRIT_PARAM, validationPrecision);
-            mcPrism.setSettings(settings);
-            ModelCheckerResult result;
-            if (prismModel instanceof DTMC chain) {
-                DTMCModelChecker dtmcChecker = new DTMCModelChecker(mcPrism);
-                result = stepBound < 0
-                        ? dtmcChecker.computeReachProbs(chain, target)
-                        : dtmcChecker.computeBoundedReachProbs(chain, target, stepBound);
-            } else if (prismModel instanceof MDP mdp) {
-                MDPModelChecker mdpChecker = new MDPModelChecker(mcPrism);
-                result = stepBound < 0
-                        ? mdpChecker.computeReachProbs(mdp, target, false)
-                        : mdpChecker.computeBoundedReachProbs(mdp, target, stepBound, false);
-            } else {
-                throw new UnsupportedOperationException(prismModel.getClass().getName());
+        if (stepBound >= 0) {
+            double reach = validator.boundedReachability(stepBound);
+            logger.log(Level.INFO, () -> String.format("Reachability: %f", reach));
+            if (!Util.lessOrEqual(reach, precision + validationPrecision)) {
+                throw new AssertionError("Core property violated!");
             }
-            reach = result.soln[initialState];
-        } catch (PrismException e) {
-            throw new PrismWrappedException(e);
+            return;
         }
-        logger.log(Level.INFO, () -> String.format("Reachability: %f", reach));
-        if (!Util.lessOrEqual(reach, precision + validationPrecision)) {
+
+        Bounds reach = validator.unboundedReachability(validationPrecision);
+        logger.log(Level.INFO, () -> String.format("Reachability: %s", reach));
+        if (!Util.lessOrEqual(reach.lowerBound(), precision + validationPrecision)) {
             throw new AssertionError("Core property violated!");
         }
+        if (!Util.lessOrEqual(reach.upperBound(), precision + validationPrecision)) {
+            throw new AssertionError("Core property not certified, reachability only bounded by " + reach);
+        }
+    }
+
+    /**
+     * The precision of the core built by the analyser, which is the requested one unless the analyser stopped early.
+     */
+    private static double reachedPrecision(
+            Explorer<?> explorer, Analyser<?> analyser, QuantitativeVerdict verdict, double precision) {
+        boolean solved = explorer.initialStateIds().intStream().allMatch(s -> verdict.isSolved(analyser.bounds(s)));
+        if (solved) {
+            return precision;
+        }
+        double reached = explorer.initialStateIds()
+                .intStream()
+                .mapToDouble(s -> analyser.bounds(s).upperBound())
+                .max()
+                .orElse(0.0d);
+        logger.log(Level.WARNING, "Core truncated at precision {0}", new Object[] {reached});
+        return Math.max(reached, precision);
+    }
+
+    private static Path labelsFile(Path transitionsFile) {
+        String name = transitionsFile.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return transitionsFile.resolveSibling((extension <= 0 ? name : name.substring(0, extension)) + ".lab");
     }
 
-    private static Supplier<BoundedCoreValues> parseBoundedValues(String option) {
+    private static Supplier<BoundedCoreValues> parseBoundedValues(String option, boolean singlePrecision) {
         String[] split = option.split(",");
+        // Only dense values support single precision storage
         return switch (split[0]) {
-            case "dense" -> BoundedCoreValues.Dense::new;
+            case "dense" -> singlePrecision ? BoundedCoreValues.DenseFloat::new : BoundedCoreValues.Dense::new;
+            case "sparse" -> BoundedCoreValues.Sparse::new;
             case "simple" -> {
                 int count = Integer.parseInt(split[1]);
                 yield () -> new BoundedCoreValues.Simple(count);
@@ -135,52 +182,134 @@ public final class CoreChecker extends DefaultCli<CoreChecker.CoreStatistics> {
         };
     }
 
-    private <S> CoreStatistics solve(ProblemInstance<S> problemInstance) {
+    private static int[] parseStepBounds(String option) {
+        int[] stepBounds = Ranges.integers(option);
+        if (stepBounds.length == 0 || stepBounds[0] < 0) {
+            throw new IllegalArgumentException("Invalid step bounds " + option);
+        }
+        return stepBounds;
+    }
+
+    private <S> CoreStatistics solve(ProblemInstance<S> problemInstance) throws IOException {
         CoreStatistics statistics = new CoreStatistics();
         Explorer<S> explorer = DefaultExplorer.of(problemInstance.model(), SelfLoopHandling.KEEP);
+        // Bounded cores and the final unbounded core are built for the finest precision
+        double[] sortedPrecisions =
+                precisions.stream().mapToDouble(Double::doubleValue).sorted().distinct().toArray();
+        double precision = sortedPrecisions[0];
         QuantitativeVerdict verdict = new QuantitativeVerdict(precision, false);
-        var boundedValues = parseBoundedValues(boundedCoreStorage);
+        boolean singlePrecision = valueStorageOption.isSinglePrecision(precision);
+        var boundedValues = parseBoundedValues(boundedCoreStorage, singlePrecision);
 
         if (unboundedCore) {
             logger.log(Level.INFO, "Building unbounded core");
 
             Stopwatch timer = Stopwatch.createStarted();
-            var values = new UnboundedCoreValues();
-            var sampler = new CollapsingSampler<>(explorer, values, verdict).run();
+            var values = new UnboundedCoreValues(true, singlePrecision);
+            var sampler = new CollapsingSampler<>(explorer, values, verdict, samplingControlOption.collapsing());
+            // Coarser cores are snapshots of the explored states at the moment their precision is reached, hence the
+            // cores are nested. The time spent on computing their statistics is not accounted to the run.
+            for (int i = 1; i < sortedPrecisions.length; i++) {
+                double coarsePrecision = sortedPrecisions[i];
+                sampler.addMilestone(new QuantitativeVerdict(coarsePrecision, false), analyser -> {
+                    timer.stop();
+                    logger.log(Level.INFO, "Reached precision {0}", new Object[] {coarsePrecision});
+                    var core = analyser.model();
+                    statistics.precisionStatistics.put(
+                            coarsePrecision,
+                            DefaultStatistics.statistics(
+                                    core.system(), core.exploredStates(), timer.elapsed(), componentAnalysis));
+                    if (validateCoreProperty) {
+                        checkCoreProperty(coarsePrecision, core, -1);
+                    }
+                    timer.start();
+                });
+            }
+            memoryBudgetOption.apply(sampler).run();
             var duration = timer.elapsed();
             var core = sampler.model();
 
+            // A run stopped by the memory budget only yields a core for the precision reached in the initial states
+            double corePrecision = reachedPrecision(explorer, sampler, verdict, precision);
             statistics.unboundedStatistics =
                     DefaultStatistics.statistics(core.system(), core.exploredStates(), duration, componentAnalysis);
+            statistics.unboundedTruncated = corePrecision > precision;
+            statistics.precisionStatistics.put(corePrecision, statistics.unboundedStatistics);
             statistics.analyserStatistics = sampler.statistics();
             if (validateCoreProperty) {
-                checkCoreProperty(precision, core, -1);
+                checkCoreProperty(corePrecision, core, -1);
+            }
+            if (coreFile != null) {
+                // Written with the precision actually reached, so users of a truncated core remain sound
+                logger.log(
+                        Level.INFO, "Writing core with precision {0} to {1}", new Object[] {corePrecision, coreFile});
+                IntSet coreStates = core.exploredStates();
+                CoreFile.write(
+                        coreFile,
+                        ModelOptions.identity(spec),
+                        corePrecision,
+                        coreStates.size(),
+                        coreStates.intStream().mapToObj(explorer::getState).iterator());
+            }
+            if (explicitFile != null) {
+                Path labelsFile = labelsFile(explicitFile);
+                logger.log(Level.INFO, "Writing core model to {0} and {1}", new Object[] {explicitFile, labelsFile});
+                ModelHelper.modelToExplicitFiles(explicitFile, labelsFile, core);
+            }
+            if (binaryFile != null) {
+                logger.log(Level.INFO, "Writing core model to {0}", new Object[] {binaryFile});
+                ModelHelper.modelToBinaryFile(binaryFile, core);
             }
         }
         if (boundedCore != null) {
-            logger.log(Level.INFO, "Building {0}-bounded core", new Object[] {boundedCore});
+            // Bounded values do not depend on the overall step bound, so all bounds share the explorer and the values
+            // and each larger bound starts from everything learned for the smaller ones
+            int[] stepBounds = parseStepBounds(boundedCore);
+            BoundedCoreValues values = boundedValues.get();
             Stopwatch timer = Stopwatch.createStarted();
-            var sampler = new PrefixSampler<>(explorer, boundedCore + 1, boundedValues.get(), verdict).run();
-            var duration = timer.elapsed();
-            var core = sampler.model();
+            for (int stepBound : stepBounds) {
+                logger.log(Level.INFO, "Building {0}-bounded core", new Object[] {stepBound});
+                PrefixAnalyser<S> sampler =
+                        new PrefixSampler<>(explorer, stepBound + 1, values, verdict, samplingControlOption.prefix());
+                memoryBudgetOption.apply(sampler).run();
+                // Like for the milestones of nested unbounded cores, statistics and validation are not accounted to
+                // the run, so the durations of the bounds remain comparable
+                timer.stop();
+                var duration = timer.elapsed();
+                var core = sampler.model();
 
-            statistics.boundedStatistics.put(
-                    boundedCore,
-                    DefaultStatistics.statistics(core.system(), core.exploredStates(), duration, componentAnalysis));
+                statistics.boundedStatistics.put(
+                        stepBound,
+                        DefaultStatistics.statistics(
+                                core.system(), core.exploredStates(), duration, componentAnalysis));
+                statistics.boundedAnalyserStatistics.put(stepBound, sampler.statistics());
+                double corePrecision = reachedPrecision(explorer, sampler, verdict, precision);
+                if (corePrecision > precision) {
+                    statistics.truncatedStepBounds.put(stepBound, corePrecision);
+                }
 
-            if (validateCoreProperty) {
-                checkCoreProperty(precision, core, boundedCore);
+                if (validateCoreProperty) {
+                    checkCoreProperty(corePrecision, core, stepBound);
+                }
+                timer.start();
             }
         }
         return statistics;
     }
 
     @Override
-    protected CoreStatistics run() throws IOException {
+    protected CheckerResult run() throws IOException {
+        if (sweepOption.isEnabled()) {
+            return sweepOption.run(
+                    spec,
+                    Set.of(EXPORT_CORE_OPTION, EXPORT_EXPLICIT_OPTION, EXPORT_BINARY_OPTION),
+                    CoreChecker::new,
+                    CoreChecker::run);
+        }
         return solve(modelOption.parse());
     }
 
-    public static final class CoreStatistics {
+    public static final class CoreStatistics implements CheckerResult {
         // CHECKSTYLE.OFF: VisibilityModifier
         @Nullable
         public ModelStatistics unboundedStatistics;
@@ -188,7 +317,16 @@ public final class CoreChecker extends DefaultCli<CoreChecker.CoreStatistics> {
         @Nullable
         public CollapsingAnalyser.UnboundedStatistics analyserStatistics;
 
+        public boolean unboundedTruncated = false;
+
+        // The precision actually reached by bounded cores which were stopped early
+        public final Map<Integer, Double> truncatedStepBounds = new TreeMap<>();
+
         public final Map<Integer, ModelStatistics> boundedStatistics = new TreeMap<>();
+
+        public final Map<Integer, PrefixAnalyser.PrefixStatistics> boundedAnalyserStatistics = new TreeMap<>();
+
+        public final Map<Double, ModelStatistics> precisionStatistics = new TreeMap<>();
         // CHECKSTYLE.ON: VisibilityModifier
     }
 }
@@ -0,0 +1,435 @@
+package de.tum.in.pet.implementation.core;
+
+import de.tum.in.pet.analyser.PartialSystem;
+import de.tum.in.probmodels.model.Choice;
+import de.tum.in.probmodels.model.TransitionSystem;
+import de.tum.in.probmodels.values.Bounds;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the maximal probability of reaching the unexplored (fringe) states of a partial system on a flattened copy
+ * of its transitions. Step-bounded probabilities are obtained by plain iteration, unbounded ones by interval iteration.
+ * The upper bounds are deflated on the maximal end components of the explored states, which otherwise could keep them
+ * from converging.
+ */
+final class CoreValidator {
+    // Below this multiple of the unit in the last place of one, the gap may be dominated by rounding
+    private static final double MINIMAL_TOLERANCE = 16 * Math.ulp(1.0d);
+
+    private final int stateCount;
+    private final int initialState;
+    private final boolean[] fringe;
+    // Compressed sparse rows: the choices of state s are choiceStart[s] until choiceStart[s + 1], the transitions of
+    // choice c are transitionStart[c] until transitionStart[c + 1]
+    private final int[] choiceStart;
+    private final int[] transitionStart;
+    private final int[] targets;
+    private final double[] probabilities;
+
+    /**
+     * A validator on already flattened transitions, indexed as described for the fields. Fringe states have no choices.
+     */
+    CoreValidator(
+            int initialState,
+            boolean[] fringe,
+            int[] choiceStart,
+            int[] transitionStart,
+            int[] targets,
+            double[] probabilities) {
+        this.stateCount = fringe.length;
+        this.initialState = initialState;
+        this.fringe = fringe;
+        this.choiceStart = choiceStart;
+        this.transitionStart = transitionStart;
+        this.targets = targets;
+        this.probabilities = probabilities;
+    }
+
+    static CoreValidator of(PartialSystem partialModel) {
+        TransitionSystem system = partialModel.system();
+        IntSet exploredStates = partialModel.exploredStates();
+        int[] states = system.states().toIntArray();
+        Arrays.sort(states);
+        int stateCount = states.length;
+        int initialState = Arrays.binarySearch(states, system.onlyInitialState());
+
+        boolean[] fringe = new boolean[stateCount];
+        int[] choiceStart = new int[stateCount + 1];
+        int choices = 0;
+        int transitions = 0;
+        for (int index = 0; index < stateCount; index++) {
+            fringe[index] = !exploredStates.contains(states[index]);
+            choiceStart[index] = choices;
+            if (!fringe[index]) {
+                for (Choice choice : system.choices(states[index])) {
+                    choices += 1;
+                    transitions += choice.distribution().size();
+                }
+            }
+        }
+        choiceStart[stateCount] = choices;
+
+        int[] transitionStart = new int[choices + 1];
+        int[] targets = new int[transitions];
+        double[] probabilities = new double[transitions];
+        int choice = 0;
+        int[] transition = {0};
+        for (int index = 0; index < stateCount; index++) {
+            if (fringe[index]) {
+                continue;
+            }
+            for (Choice stateChoice : system.choices(states[index])) {
+                transitionStart[choice] = transition[0];
+                stateChoice.distribution().forEach((target, probability) -> {
+                    targets[transition[0]] = Arrays.binarySearch(states, target);
+                    probabilities[transition[0]] = probability;
+                    transition[0] += 1;
+                });
+                choice += 1;
+            }
+        }
+        transitionStart[choices] = transitions;
+        return new CoreValidator(initialState, fringe, choiceStart, transitionStart, targets, probabilities);
+    }
+
+    private double value(double[] values, int state) {
+        if (fringe[state]) {
+            return 1.0d;
+        }
+        double max = 0.0d;
+        for (int choice = choiceStart[state]; choice < choiceStart[state + 1]; choice++) {
+            double sum = 0.0d;
+            for (int transition = transitionStart[choice]; transition < transitionStart[choice + 1]; transition++) {
+                sum += probabilities[transition] * values[targets[transition]];
+            }
+            if (sum > max) {
+                max = sum;
+            }
+        }
+        return max;
+    }
+
+    private double[] initialValues() {
+        double[] values = new double[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            if (fringe[state]) {
+                values[state] = 1.0d;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the maximal difference between the old and new values.
+     */
+    private double sweep(double[] current, double[] next) {
+        return IntStream.range(0, stateCount)
+                .parallel()
+                .mapToDouble(state -> {
+                    next[state] = value(current, state);
+                    return Math.abs(next[state] - current[state]);
+                })
+                .max()
+                .orElse(0.0d);
+    }
+
+    double boundedReachability(int stepBound) {
+        double[] current = initialValues();
+        double[] next = new double[stateCount];
+        for (int step = 0; step < stepBound; step++) {
+            sweep(current, next);
+            double[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return current[initialState];
+    }
+
+    /**
+     * Bounds on the unbounded reachability probability of width at most the given precision, or of the smallest width
+     * reachable within the floating point precision.
+     */
+    Bounds unboundedReachability(double precision) {
+        boolean[] canReach = canReachFringe();
+        EndComponents components = endComponents();
+        double[] lower = initialValues();
+        double[] nextLower = new double[stateCount];
+        double[] upper = new double[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            upper[state] = canReach[state] ? 1.0d : 0.0d;
+        }
+        double[] nextUpper = new double[stateCount];
+
+        double tolerance = Math.max(precision, MINIMAL_TOLERANCE);
+        while (upper[initialState] - lower[initialState] > tolerance) {
+            double lowerDifference = sweep(lower, nextLower);
+            double upperDifference = sweep(upper, nextUpper);
+            boolean deflated = components.deflate(nextUpper);
+            double[] swap = lower;
+            lower = nextLower;
+            nextLower = swap;
+            swap = upper;
+            upper = nextUpper;
+            nextUpper = swap;
+            if (lowerDifference == 0.0d && upperDifference == 0.0d && !deflated) {
+                // No more progress within the floating point precision
+                break;
+            }
+        }
+        return Bounds.reach(lower[initialState], upper[initialState]);
+    }
+
+    /**
+     * The maximal end components of the explored states. The value of a state in an end component is bounded by the
+     * best choice leaving the component, which is what the upper bound iteration alone cannot find.
+     */
+    private EndComponents endComponents() {
+        boolean[] candidate = new boolean[stateCount];
+        boolean[] removed = new boolean[choiceStart[stateCount]];
+        for (int state = 0; state < stateCount; state++) {
+            candidate[state] = !fringe[state];
+        }
+        // Repeatedly remove choices leaving their strongly connected component and states without remaining choices
+        int[] component;
+        boolean changed;
+        do {
+            component = stronglyConnectedComponents(candidate, removed);
+            changed = false;
+            for (int state = 0; state < stateCount; state++) {
+                if (!candidate[state]) {
+                    continue;
+                }
+                boolean hasChoice = false;
+                for (int choice = choiceStart[state]; choice < choiceStart[state + 1]; choice++) {
+                    if (removed[choice]) {
+                        continue;
+                    }
+                    for (int transition = transitionStart[choice];
+                            transition < transitionStart[choice + 1];
+                            transition++) {
+                        int target = targets[transition];
+                        if (!candidate[target] || component[target] != component[state]) {
+                            removed[choice] = true;
+                            changed = true;
+                            break;
+                        }
+                    }
+                    hasChoice |= !removed[choice];
+                }
+                if (!hasChoice) {
+                    candidate[state] = false;
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        int componentCount = 0;
+        for (int state = 0; state < stateCount; state++) {
+            if (candidate[state]) {
+                componentCount = Math.max(componentCount, component[state] + 1);
+            } else {
+                component[state] = -1;
+            }
+        }
+        int[] componentStart = new int[componentCount + 1];
+        for (int state = 0; state < stateCount; state++) {
+            if (component[state] >= 0) {
+                componentStart[component[state] + 1] += 1;
+            }
+        }
+        for (int index = 0; index < componentCount; index++) {
+            componentStart[index + 1] += componentStart[index];
+        }
+        int[] componentStates = new int[componentStart[componentCount]];
+        int[] position = Arrays.copyOf(componentStart, componentCount);
+        for (int state = 0; state < stateCount; state++) {
+            if (component[state] >= 0) {
+                componentStates[position[component[state]]++] = state;
+            }
+        }
+        return new EndComponents(componentStart, componentStates, removed);
+    }
+
+    /**
+     * Tarjan's algorithm on the candidate states and the choices not yet removed, without recursion. Returns the index
+     * of the component of each candidate state.
+     */
+    private int[] stronglyConnectedComponents(boolean[] candidate, boolean[] removed) {
+        int[] index = new int[stateCount];
+        Arrays.fill(index, -1);
+        int[] lowLink = new int[stateCount];
+        int[] component = new int[stateCount];
+        boolean[] onStack = new boolean[stateCount];
+        int[] choiceCursor = new int[stateCount];
+        int[] transitionCursor = new int[stateCount];
+        IntList stack = new IntArrayList();
+        IntList path = new IntArrayList();
+        int counter = 0;
+        int components = 0;
+
+        for (int root = 0; root < stateCount; root++) {
+            if (!candidate[root] || index[root] >= 0) {
+                continue;
+            }
+            path.add(root);
+            while (!path.isEmpty()) {
+                int state = path.getInt(path.size() - 1);
+                if (index[state] < 0) {
+                    index[state] = counter;
+                    lowLink[state] = counter;
+                    counter += 1;
+                    stack.add(state);
+                    onStack[state] = true;
+                    choiceCursor[state] = choiceStart[state];
+                    transitionCursor[state] = transitionStart[choiceStart[state]];
+                }
+                int successor = nextSuccessor(state, candidate, removed, choiceCursor, transitionCursor);
+                if (successor >= 0) {
+                    if (index[successor] < 0) {
+                        path.add(successor);
+                    } else if (onStack[successor]) {
+                        lowLink[state] = Math.min(lowLink[state], index[successor]);
+                    }
+                    continue;
+                }
+                path.removeInt(path.size() - 1);
+                if (!path.isEmpty()) {
+                    int parent = path.getInt(path.size() - 1);
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[state]);
+                }
+                if (lowLink[state] == index[state]) {
+                    int member;
+                    do {
+                        member = stack.removeInt(stack.size() - 1);
+                        onStack[member] = false;
+                        component[member] = components;
+                    } while (member != state);
+                    components += 1;
+                }
+            }
+        }
+        return component;
+    }
+
+    private int nextSuccessor(
+            int state, boolean[] candidate, boolean[] removed, int[] choiceCursor, int[] transitionCursor) {
+        while (choiceCursor[state] < choiceStart[state + 1]) {
+            int choice = choiceCursor[state];
+            if (removed[choice] || transitionCursor[state] >= transitionStart[choice + 1]) {
+                choiceCursor[state] += 1;
+                transitionCursor[state] = transitionStart[choice + 1];
+                continue;
+            }
+            int target = targets[transitionCursor[state]];
+            transitionCursor[state] += 1;
+            if (candidate[target]) {
+                return target;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * States from which some fringe state is reachable, all other states have value zero.
+     */
+    private boolean[] canReachFringe() {
+        int[] predecessorStart = new int[stateCount + 1];
+        for (int state = 0; state < stateCount; state++) {
+            for (int transition = transitionStart[choiceStart[state]];
+                    transition < transitionStart[choiceStart[state + 1]];
+                    transition++) {
+                predecessorStart[targets[transition] + 1] += 1;
+            }
+        }
+        for (int state = 0; state < stateCount; state++) {
+            predecessorStart[state + 1] += predecessorStart[state];
+        }
+        int[] predecessors = new int[predecessorStart[stateCount]];
+        int[] position = Arrays.copyOf(predecessorStart, stateCount);
+        for (int state = 0; state < stateCount; state++) {
+            for (int transition = transitionStart[choiceStart[state]];
+                    transition < transitionStart[choiceStart[state + 1]];
+                    transition++) {
+                predecessors[position[targets[transition]]++] = state;
+            }
+        }
+
+        boolean[] canReach = new boolean[stateCount];
+        IntList queue = new IntArrayList();
+        for (int state = 0; state < stateCount; state++) {
+            if (fringe[state]) {
+                canReach[state] = true;
+                queue.add(state);
+            }
+        }
+        for (int head = 0; head < queue.size(); head++) {
+            int state = queue.getInt(head);
+            for (int i = predecessorStart[state]; i < predecessorStart[state + 1]; i++) {
+                int predecessor = predecessors[i];
+                if (!canReach[predecessor]) {
+                    canReach[predecessor] = true;
+                    queue.add(predecessor);
+                }
+            }
+        }
+        return canReach;
+    }
+
+    private final class EndComponents {
+        // The states of component k are componentStates[componentStart[k]] until componentStates[componentStart[k + 1]]
+        private final int[] componentStart;
+        private final int[] componentStates;
+        // Exactly the choices leaving their end component are removed
+        private final boolean[] removed;
+
+        EndComponents(int[] componentStart, int[] componentStates, boolean[] removed) {
+            this.componentStart = componentStart;
+            this.componentStates = componentStates;
+            this.removed = removed;
+        }
+
+        /**
+         * Bounds the values of each component by its best leaving choice. Returns true if some value decreased.
+         */
+        boolean deflate(double[] values) {
+            // Not short-circuiting, all components need to be deflated
+            return IntStream.range(0, componentStart.length - 1)
+                            .parallel()
+                            .filter(component -> deflate(values, component))
+                            .count()
+                    > 0;
+        }
+
+        private boolean deflate(double[] values, int component) {
+            double best = 0.0d;
+            for (int i = componentStart[component]; i < componentStart[component + 1]; i++) {
+                int state = componentStates[i];
+                for (int choice = choiceStart[state]; choice < choiceStart[state + 1]; choice++) {
+                    if (!removed[choice]) {
+                        continue;
+                    }
+                    double sum = 0.0d;
+                    for (int transition = transitionStart[choice];
+                            transition < transitionStart[choice + 1];
+                            transition++) {
+                        sum += probabilities[transition] * values[targets[transition]];
+                    }
+                    best = Math.max(best, sum);
+                }
+            }
+            boolean deflated = false;
+            for (int i = componentStart[component]; i < componentStart[component + 1]; i++) {
+                int state = componentStates[i];
+                if (values[state] > best) {
+                    values[state] = best;
+                    deflated = true;
+                }
+            }
+            return deflated;
+        }
+    }
+}
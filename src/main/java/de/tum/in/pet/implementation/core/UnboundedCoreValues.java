@@ -3,28 +3,26 @@ package de.tum.in.pet.implementation.core;
 import static de.tum.in.probmodels.util.Util.isOne;
 import static de.tum.in.probmodels.util.Util.lessOrEqual;
 
-import de.tum.in.naturals.map.Nat2DoubleDenseArrayMap;
 import de.tum.in.pet.analyser.CollapsingValues;
+import de.tum.in.pet.analyser.MutableBounds;
+import de.tum.in.pet.analyser.ValueStorage;
 import de.tum.in.probmodels.graph.Component;
 import de.tum.in.probmodels.model.distribution.Distribution;
 import de.tum.in.probmodels.values.Bounds;
-import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 import java.util.List;
 import java.util.function.ToDoubleFunction;
 import javax.annotation.Nullable;
 
 class UnboundedCoreValues implements CollapsingValues<Distribution> {
-    private final Int2DoubleMap map;
+    private final ValueStorage map;
     private final boolean dense;
 
     UnboundedCoreValues() {
-        this(true);
+        this(true, false);
     }
 
-    UnboundedCoreValues(boolean dense) {
-        map = dense ? new Nat2DoubleDenseArrayMap(1024) : new Int2DoubleOpenHashMap(1024);
-        map.defaultReturnValue(1.0d);
+    UnboundedCoreValues(boolean dense, boolean singlePrecision) {
+        map = ValueStorage.create(singlePrecision, dense, ValueStorage.Rounding.UP, 1.0d);
         this.dense = dense;
     }
 
@@ -76,13 +74,27 @@ class UnboundedCoreValues implements CollapsingValues<Distribution> {
         return update(state, distributions);
     }
 
+    @Override
+    public void update(
+            int state,
+            List<Distribution> distributions,
+            List<? extends Distribution> choices,
+            Distribution selected,
+            MutableBounds result) {
+        result.set(0.0, updateUpperBound(state, distributions));
+    }
+
     public Bounds update(int state, List<? extends Distribution> distributions) {
+        return Bounds.reach(0.0, updateUpperBound(state, distributions));
+    }
+
+    private double updateUpperBound(int state, List<? extends Distribution> distributions) {
         if (distributions.size() == 1) {
             Distribution distribution = distributions.get(0);
             double value = distribution.sumWeightedExceptJacobi(map, state);
             double newValue = Double.isNaN(value) ? 0.0 : value;
             update(state, newValue);
-            return Bounds.reach(0.0, newValue);
+            return upperBound(state);
         }
         double maximalValue = 0.0d;
         for (Distribution distribution : distributions) {
@@ -98,23 +110,23 @@ class UnboundedCoreValues implements CollapsingValues<Distribution> {
             }
         }
         update(state, maximalValue);
-        return Bounds.reach(0.0, maximalValue);
+        return upperBound(state);
     }
 
     void update(int state, double value) {
         if (isOne(value)) {
             return;
         }
-        double oldValue = map.put(state, value);
-        assert lessOrEqual(value, oldValue);
+        assert lessOrEqual(value, map.get(state));
+        map.put(state, value);
     }
 
     @Override
     public void collapse(int representative, List<Distribution> distributions, Component collapsed) {
         if (!dense) {
-            map.keySet().removeAll(collapsed.states());
+            map.removeAll(collapsed.states());
         }
-        update(representative, distributions);
+        updateUpperBound(representative, distributions);
     }
 
     @Override
@@ -3,12 +3,16 @@ package de.tum.in.pet.implementation.meanpayoff;
 import static picocli.CommandLine.Command;
 import static picocli.CommandLine.Mixin;
 import static picocli.CommandLine.Option;
+import static picocli.CommandLine.Spec;
 
 import de.tum.in.pet.analyser.CollapsingAnalyser;
 import de.tum.in.pet.analyser.CollapsingGlobalAnalyser;
 import de.tum.in.pet.analyser.CollapsingSampler;
 import de.tum.in.pet.util.DefaultResult;
+import de.tum.in.pet.util.MemoryBudgetMixin;
+import de.tum.in.pet.util.ModelOptions;
 import de.tum.in.pet.util.PrecisionMixin;
+import de.tum.in.pet.util.SamplingControlMixin;
 import de.tum.in.probmodels.cli.DefaultCli;
 import de.tum.in.probmodels.explorer.DefaultExplorer;
 import de.tum.in.probmodels.explorer.Explorer;
@@ -21,21 +25,39 @@ import de.tum.in.probmodels.problem.verdict.QuantitativeVerdict;
 import de.tum.in.probmodels.problem.verdict.Result;
 import de.tum.in.probmodels.values.Bounds;
 import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.ParameterException;
 
 @SuppressWarnings("PMD.ImmutableField")
 @Command(name = "mean-payoff", mixinStandardHelpOptions = true)
 public final class MeanPayoffChecker extends DefaultCli<DefaultResult<?>> {
+    private static final Logger logger = Logger.getLogger(MeanPayoffChecker.class.getName());
+
+    @Spec
+    private CommandSpec spec;
+
     @Mixin
     private PrecisionMixin precisionOption;
 
     @Mixin
     private PrismModelMixin modelOption;
 
-    @Option(names = "--reward-min", required = true, description = "Minimum reward")
-    private double rewardMin;
+    @Mixin
+    private SamplingControlMixin samplingControlOption;
+
+    @Mixin
+    private MemoryBudgetMixin memoryBudgetOption;
 
-    @Option(names = "--reward-max", required = true, description = "Maximum reward")
-    private double rewardMax;
+    @Option(names = "--reward-min", description = "Minimum reward (default: derived from the reward structure)")
+    @Nullable
+    private Double rewardMin = null;
+
+    @Option(names = "--reward-max", description = "Maximum reward (default: derived from the reward structure)")
+    @Nullable
+    private Double rewardMax = null;
 
     @Option(names = "--rewards", required = true, description = "Reward name / index to check")
     private String rewardName;
@@ -48,16 +70,39 @@ public final class MeanPayoffChecker extends DefaultCli<DefaultResult<?>> {
 
     private MeanPayoffChecker() {}
 
-    private <S> DefaultResult<S> solve(ProblemInstance<S> problemInstance) {
+    /**
+     * Bounds on the reward of a single step, obtained statically from the reward structure and intersected with the
+     * given bounds, which are trusted.
+     */
+    private Bounds rewardBounds() throws IOException {
+        if (rewardMin != null && rewardMax != null) {
+            return Bounds.of(rewardMin, rewardMax);
+        }
+        Bounds staticBounds = RewardStructureBounds.of(
+                        ModelOptions.model(spec), ModelOptions.constants(spec), rewardName)
+                .orElseThrow(() -> new ParameterException(
+                        spec.commandLine(),
+                        "Cannot bound the rewards of %s statically, specify --reward-min and --reward-max"
+                                .formatted(rewardName)));
+        Bounds bounds = Bounds.of(
+                rewardMin == null ? staticBounds.lowerBound() : Math.max(rewardMin, staticBounds.lowerBound()),
+                rewardMax == null ? staticBounds.upperBound() : Math.min(rewardMax, staticBounds.upperBound()));
+        logger.log(Level.INFO, "Derived reward bounds {0}", new Object[] {bounds});
+        return bounds;
+    }
+
+    private <S> DefaultResult<S> solve(ProblemInstance<S> problemInstance) throws IOException {
         Explorer<S> explorer = DefaultExplorer.of(problemInstance.model(), SelfLoopHandling.KEEP);
         var rewardGenerator = problemInstance.reward(rewardName);
         var verdict = QuantitativeVerdict.of(precisionOption.parse());
-        var values = new MeanPayoffValues(
-                optimization, Bounds.of(rewardMin, rewardMax), new RewardExplorer<>(explorer, rewardGenerator));
-        CollapsingAnalyser<S, ?> analyser = (global
-                        ? new CollapsingGlobalAnalyser<>(explorer, values, verdict)
-                        : new CollapsingSampler<>(explorer, values, verdict))
-                .run();
+        var rewards = new RewardExplorer<>(explorer, rewardGenerator);
+
+        Bounds rewardBounds = rewardBounds();
+        var values = new MeanPayoffValues(optimization, rewardBounds, rewards);
+        CollapsingAnalyser<S, ?> analyser = global
+                ? new CollapsingGlobalAnalyser<>(explorer, values, verdict)
+                : new CollapsingSampler<>(explorer, values, verdict, samplingControlOption.collapsing());
+        memoryBudgetOption.apply(analyser).run();
         var results = Result.of(explorer.initialStates(), s -> analyser.bounds(explorer.getStateId(s)), verdict);
         return new DefaultResult<>(rewardName, analyser.statistics(), results.asMap());
     }
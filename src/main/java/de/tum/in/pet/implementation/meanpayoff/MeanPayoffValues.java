@@ -212,9 +212,23 @@ public class MeanPayoffValues implements CollapsingValues<Object> {
         }
     }
 
+    /**
+     * Value iteration on the aperiodicity transformation of the component, which stays in each state with probability
+     * 1 - alpha. For any vector v, the minimal and maximal difference between the (transformed) update of v and v bound
+     * the mean payoff, and for the Jacobi iteration these bounds are nested.
+     *
+     * <p>Gauss-Seidel sweeps are not used: the differences of an in-place sweep do not bound the mean payoff, since
+     * later states already see the increment of earlier ones, and the differences of a Jacobi evaluation of swept
+     * values do not converge to a constant. Extrapolating the values by the contraction of the span is not used either,
+     * as on (nearly) periodic components the slowest modes are rotating and extrapolation amplifies them.
+     */
     private static final class NontrivialComponentIterator implements ComponentIterator {
-        // TODO Adaptively choose
-        private static final double alpha = 0.9;
+        private static final double INITIAL_ALPHA = 0.9;
+        private static final double MINIMAL_ALPHA = 0.5;
+        private static final double MAXIMAL_ALPHA = 0.99;
+        private static final double ALPHA_STEP = 0.1;
+        private static final double STALLING_CONTRACTION = 0.95;
+        private static final double FAST_CONTRACTION = 0.5;
 
         private final Component component;
         private final RewardExplorer<?> rewards;
@@ -224,6 +238,9 @@ public class MeanPayoffValues implements CollapsingValues<Object> {
         private Bounds currentBounds;
         private int iterationBound;
         private boolean boundsConvergedPastInitial = false;
+        private double alpha = INITIAL_ALPHA;
+        private double previousSpan = Double.NaN;
+        private double contraction = Double.NaN;
 
         NontrivialComponentIterator(
                 Component component,
@@ -241,7 +258,33 @@ public class MeanPayoffValues implements CollapsingValues<Object> {
             }
             totalRewardIterationNext = new Int2DoubleOpenHashMap(component.size());
             iterationBound = (component.size() / 2 + 1);
-            this.currentBounds = rewardBounds; // NOPMD
+            this.currentBounds = componentRewardBounds(component, rewards, rewardBounds); // NOPMD
+        }
+
+        /**
+         * Staying in the component forever, the mean payoff is bounded by the rewards obtainable inside it, which
+         * usually is much tighter than the global reward bounds.
+         */
+        private static Bounds componentRewardBounds(Component component, RewardExplorer<?> rewards, Bounds bounds) {
+            double minimum = Double.POSITIVE_INFINITY;
+            double maximum = Double.NEGATIVE_INFINITY;
+            IntIterator stateIterator = component.states().iterator();
+            while (stateIterator.hasNext()) {
+                int state = stateIterator.nextInt();
+                double stateReward = rewards.reward(state);
+                for (Choice choice : component.choices(state)) {
+                    double reward = stateReward + rewards.transitionReward(state, choice);
+                    if (reward < minimum) {
+                        minimum = reward;
+                    }
+                    if (reward > maximum) {
+                        maximum = reward;
+                    }
+                }
+            }
+            double lower = Math.max(bounds.lowerBound(), minimum);
+            double upper = Math.min(bounds.upperBound(), maximum);
+            return lower <= upper ? Bounds.of(lower, upper) : bounds;
         }
 
         private Iteration update(int iterationBound, double targetPrecision) {
@@ -265,7 +308,8 @@ public class MeanPayoffValues implements CollapsingValues<Object> {
                             ? Double.NEGATIVE_INFINITY
                             : Double.POSITIVE_INFINITY;
                     for (Choice choice : component.choices(state)) {
-                        double val = choice.distribution().sumWeighted(currentValues)
+                        // Only the successor values are transformed, so that the mean payoff does not depend on alpha
+                        double val = alpha * choice.distribution().sumWeighted(currentValues)
                                 + rewards.transitionReward(state, choice);
                         if (optimization == Optimization.MAX_VALUE) {
                             if (val > optimum) {
@@ -279,7 +323,7 @@ public class MeanPayoffValues implements CollapsingValues<Object> {
                     }
                     Util.KahanSum valueSum = new Util.KahanSum();
                     valueSum.add(stateValue);
-                    valueSum.add(alpha * optimum);
+                    valueSum.add(optimum);
                     valueSum.add((1 - alpha) * currentValue);
 
                     double nextValue = valueSum.get();
@@ -310,11 +354,34 @@ public class MeanPayoffValues implements CollapsingValues<Object> {
                         currentBounds = nextBounds.shrink(currentBounds);
                     }
                 }
+                adapt(maximalDifference - minimalDifference);
                 iterationCount += 1;
             }
             return new Iteration(currentBounds, iterationCount, targetPrecision);
         }
 
+        /**
+         * Adapt alpha based on the observed contraction of the span. The bounds are only guaranteed to be nested for a
+         * fixed transformation, hence changing alpha restarts the convergence check.
+         */
+        private void adapt(double span) {
+            contraction = span / previousSpan;
+            previousSpan = span;
+            double nextAlpha = alpha;
+            if (contraction >= STALLING_CONTRACTION) {
+                // Likely (close to) periodic, increase the self-loop probability of the transformation
+                nextAlpha = Math.max(MINIMAL_ALPHA, alpha - ALPHA_STEP);
+            } else if (contraction <= FAST_CONTRACTION) {
+                nextAlpha = Math.min(MAXIMAL_ALPHA, alpha + ALPHA_STEP);
+            }
+            //noinspection FloatingPointEquality
+            if (nextAlpha != alpha) {
+                alpha = nextAlpha;
+                boundsConvergedPastInitial = false;
+                previousSpan = Double.NaN;
+            }
+        }
+
         @Override
         public Bounds update() {
             double targetPrecision = currentBounds.difference() / 2.0;
@@ -323,7 +390,16 @@ public class MeanPayoffValues implements CollapsingValues<Object> {
             assert this.currentBounds.contains(resultBounds, Util.WEAK_EPS);
             this.currentBounds = resultBounds;
             if (iteration.iterations == iterationBound) {
-                iterationBound += component.size();
+                int growth = component.size();
+                if (0.0 < contraction && contraction < 1.0) {
+                    // Estimate the number of iterations until the span reaches the target precision
+                    double estimate = Math.log(targetPrecision / previousSpan) / Math.log(contraction);
+                    if (estimate > 0.0 && estimate < growth) {
+                        //noinspection NumericCastThatLosesPrecision
+                        growth = Math.max(1, (int) Math.ceil(estimate));
+                    }
+                }
+                iterationBound += growth;
             }
             return resultBounds;
         }
@@ -0,0 +1,189 @@
+package de.tum.in.pet.implementation.meanpayoff;
+
+import de.tum.in.probmodels.impl.prism.PrismWrappedException;
+import de.tum.in.probmodels.values.Bounds;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import parser.Values;
+import parser.VarList;
+import parser.ast.Expression;
+import parser.ast.ExpressionBinaryOp;
+import parser.ast.ExpressionFunc;
+import parser.ast.ExpressionITE;
+import parser.ast.ExpressionUnaryOp;
+import parser.ast.ExpressionVar;
+import parser.ast.ModulesFile;
+import parser.ast.RewardStruct;
+import prism.Prism;
+import prism.PrismDevNullLog;
+import prism.PrismException;
+import prism.UndefinedConstants;
+
+/**
+ * Bounds the reward obtained in a single step by interval evaluation of the reward expressions over the declared
+ * ranges of the model variables. Guards are only used to drop items which can never apply.
+ */
+final class RewardStructureBounds {
+    private final Values constants;
+    private final VarList variables;
+
+    private RewardStructureBounds(Values constants, VarList variables) {
+        this.constants = constants;
+        this.variables = variables;
+    }
+
+    /**
+     * Bounds on the sum of state and transition reward of any state and choice, or empty if some reward expression
+     * cannot be bounded.
+     */
+    static Optional<Bounds> of(Path model, String constantDefinitions, String rewardName) throws IOException {
+        try {
+            ModulesFile modulesFile = new Prism(new PrismDevNullLog()).parseModelFile(model.toFile());
+            UndefinedConstants undefinedConstants = new UndefinedConstants(modulesFile, null);
+            undefinedConstants.defineUsingConstSwitch(constantDefinitions);
+            modulesFile.setSomeUndefinedConstants(undefinedConstants.getMFConstantValues());
+
+            int index = modulesFile.getRewardStructIndex(rewardName);
+            if (index < 0) {
+                try {
+                    // Reward structures also are referred to by their 1-based index
+                    index = Integer.parseInt(rewardName) - 1;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unknown reward structure " + rewardName, e);
+                }
+            }
+            if (index < 0 || index >= modulesFile.getNumRewardStructs()) {
+                throw new IllegalArgumentException("Unknown reward structure " + rewardName);
+            }
+            var analysis = new RewardStructureBounds(modulesFile.getConstantValues(), modulesFile.createVarList());
+            return analysis.bounds(modulesFile.getRewardStruct(index));
+        } catch (PrismException e) {
+            throw new PrismWrappedException(e);
+        }
+    }
+
+    private Optional<Bounds> bounds(RewardStruct rewards) throws PrismException {
+        // Items may overlap, so the reward of a state is bounded by the sum of all items that possibly apply
+        double lower = 0.0d;
+        double upper = 0.0d;
+        for (int item = 0; item < rewards.getNumItems(); item++) {
+            Expression guard = rewards.getStates(item);
+            boolean always = false;
+            if (guard.isConstant()) {
+                if (!guard.evaluateBoolean(constants)) {
+                    continue;
+                }
+                // Transition rewards only apply to choices with the respective action
+                always = !rewards.isTransitionReward(item);
+            }
+            @Nullable Interval reward = evaluate(rewards.getReward(item));
+            if (reward == null) {
+                return Optional.empty();
+            }
+            lower += always ? reward.lower() : Math.min(0.0d, reward.lower());
+            upper += always ? reward.upper() : Math.max(0.0d, reward.upper());
+        }
+        return Optional.of(Bounds.of(lower, upper));
+    }
+
+    @Nullable
+    private Interval evaluate(Expression expression) throws PrismException {
+        if (expression.isConstant()) {
+            double value = expression.evaluateDouble(constants);
+            return new Interval(value, value);
+        }
+        if (expression instanceof ExpressionVar variable) {
+            int index = variables.getIndex(variable.getName());
+            return index < 0 ? null : new Interval(variables.getLow(index), variables.getHigh(index));
+        }
+        if (expression instanceof ExpressionUnaryOp unary) {
+            @Nullable Interval operand = evaluate(unary.getOperand());
+            if (operand == null) {
+                return null;
+            }
+            return switch (unary.getOperator()) {
+                case ExpressionUnaryOp.PARENTH -> operand;
+                case ExpressionUnaryOp.MINUS -> new Interval(-operand.upper(), -operand.lower());
+                default -> null;
+            };
+        }
+        if (expression instanceof ExpressionBinaryOp binary) {
+            @Nullable Interval left = evaluate(binary.getOperand1());
+            @Nullable Interval right = evaluate(binary.getOperand2());
+            if (left == null || right == null) {
+                return null;
+            }
+            return switch (binary.getOperator()) {
+                case ExpressionBinaryOp.PLUS -> new Interval(
+                        left.lower() + right.lower(), left.upper() + right.upper());
+                case ExpressionBinaryOp.MINUS -> new Interval(
+                        left.lower() - right.upper(), left.upper() - right.lower());
+                case ExpressionBinaryOp.TIMES -> Interval.hull(
+                        left.lower() * right.lower(),
+                        left.lower() * right.upper(),
+                        left.upper() * right.lower(),
+                        left.upper() * right.upper());
+                case ExpressionBinaryOp.DIVIDE -> right.lower() <= 0.0d && right.upper() >= 0.0d
+                        ? null
+                        : Interval.hull(
+                                left.lower() / right.lower(),
+                                left.lower() / right.upper(),
+                                left.upper() / right.lower(),
+                                left.upper() / right.upper());
+                default -> null;
+            };
+        }
+        if (expression instanceof ExpressionITE conditional) {
+            @Nullable Interval first = evaluate(conditional.getOperand2());
+            @Nullable Interval second = evaluate(conditional.getOperand3());
+            return first == null || second == null
+                    ? null
+                    : new Interval(Math.min(first.lower(), second.lower()), Math.max(first.upper(), second.upper()));
+        }
+        if (expression instanceof ExpressionFunc function) {
+            return evaluateFunction(function);
+        }
+        return null;
+    }
+
+    @Nullable
+    private Interval evaluateFunction(ExpressionFunc function) throws PrismException {
+        int code = function.getNameCode();
+        if (code == ExpressionFunc.FLOOR || code == ExpressionFunc.CEIL) {
+            @Nullable Interval operand = evaluate(function.getOperand(0));
+            return operand == null
+                    ? null
+                    : new Interval(Math.floor(operand.lower()), Math.ceil(operand.upper()));
+        }
+        if (code != ExpressionFunc.MIN && code != ExpressionFunc.MAX) {
+            return null;
+        }
+        @Nullable Interval result = null;
+        for (int i = 0; i < function.getNumOperands(); i++) {
+            @Nullable Interval operand = evaluate(function.getOperand(i));
+            if (operand == null) {
+                return null;
+            }
+            if (result == null) {
+                result = operand;
+            } else if (code == ExpressionFunc.MIN) {
+                result = new Interval(
+                        Math.min(result.lower(), operand.lower()), Math.min(result.upper(), operand.upper()));
+            } else {
+                result = new Interval(
+                        Math.max(result.lower(), operand.lower()), Math.max(result.upper(), operand.upper()));
+            }
+        }
+        return result;
+    }
+
+    private record Interval(double lower, double upper) {
+        static Interval hull(double first, double second, double third, double fourth) {
+            return new Interval(
+                    Math.min(Math.min(first, second), Math.min(third, fourth)),
+                    Math.max(Math.max(first, second), Math.max(third, fourth)));
+        }
+    }
+}
@@ -3,9 +3,10 @@ package de.tum.in.pet.implementation.reachability;
 import static de.tum.in.probmodels.util.Util.isOne;
 import static de.tum.in.probmodels.util.Util.isZero;
 
-import com.google.common.collect.Lists;
+import de.tum.in.pet.analyser.MutableBounds;
 import de.tum.in.pet.analyser.PrefixValues;
 import de.tum.in.probmodels.model.Choice;
+import de.tum.in.probmodels.model.distribution.Distribution;
 import de.tum.in.probmodels.problem.property.ReachType;
 import de.tum.in.probmodels.problem.query.Optimization;
 import de.tum.in.probmodels.values.Bounds;
@@ -13,15 +14,33 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.ToDoubleFunction;
+import javax.annotation.Nullable;
 
+/**
+ * Bounds for step-bounded reachability. The bounds of a state are stored as one array with interleaved lower and upper
+ * bounds per number of remaining steps, so that updates do not allocate.
+ */
 public class BoundedReachValues implements PrefixValues {
-    private final Int2ObjectMap<Bounds[]> bounds = new Int2ObjectOpenHashMap<>();
+    private final Int2ObjectMap<double[]> bounds = new Int2ObjectOpenHashMap<>();
     private final IntFunction<ReachType> target;
     private final Optimization update;
     private final boolean monotonicity;
+    @Nullable
+    private IntToDoubleFunction upperSeed = null;
+
+    // State of the current pass over successors, shared by the reused functions below
+    private int successorRemaining = 0;
+    private double lowerSum = 0.0d;
+    private double upperSum = 0.0d;
+    private final IntToDoubleFunction successorLowerBound = s -> lowerBound(s, successorRemaining);
+    private final IntToDoubleFunction successorUpperBound = s -> upperBound(s, successorRemaining);
+    private final ToDoubleFunction<Choice> lowerScore =
+            choice -> -choice.distribution().sumWeighted(successorLowerBound);
+    private final ToDoubleFunction<Choice> upperScore =
+            choice -> choice.distribution().sumWeighted(successorUpperBound);
 
     public BoundedReachValues(IntFunction<ReachType> target, Optimization update, boolean monotonicity) {
         this.target = target;
@@ -29,115 +48,243 @@ public class BoundedReachValues implements PrefixValues {
         this.monotonicity = monotonicity;
     }
 
+    /**
+     * Additionally bound the upper bounds of all states by the given seed, for example the upper bounds of the
+     * corresponding unbounded problem. The seed is queried lazily and may improve over time.
+     */
+    public void setUpperSeed(IntToDoubleFunction upperSeed) {
+        this.upperSeed = upperSeed;
+    }
+
     @Override
     public Bounds bounds(int state, int remaining) {
         assert 0 <= remaining;
         return switch (target.apply(state)) {
             case GOAL -> Bounds.one();
             case SINK -> Bounds.zero();
+            case UNKNOWN -> remaining == 0
+                    ? Bounds.zero()
+                    : Bounds.of(lowerBound(state, remaining), upperBound(state, remaining));
+        };
+    }
+
+    @Override
+    public double lowerBound(int state, int remaining) {
+        return switch (target.apply(state)) {
+            case GOAL -> 1.0d;
+            case SINK -> 0.0d;
             case UNKNOWN -> {
                 if (remaining == 0) {
-                    yield Bounds.zero();
+                    yield 0.0d;
                 }
-                int index = remaining - 1;
-                Bounds[] values = bounds.get(state);
-                yield values == null || values.length <= index ? Bounds.unknownReach() : values[index];
+                int index = 2 * (remaining - 1);
+                double[] values = bounds.get(state);
+                double lowerBound = values == null || values.length <= index ? 0.0d : values[index];
+                yield upperSeed == null ? lowerBound : Math.min(lowerBound, upperSeed.applyAsDouble(state));
+            }
+        };
+    }
+
+    /**
+     * The best known lower bound on reaching the target within the given number of steps. Since these values are
+     * monotone in the number of steps, the lower bounds of all smaller step counts apply, which also makes the result a
+     * lower bound of the unbounded problem. With monotonicity, the stored lower bounds are non-decreasing in the number
+     * of steps and the bound is read in constant time, since it may seed every successor of a Bellman sum.
+     */
+    public double lowerBoundWithin(int state, int remaining) {
+        return switch (target.apply(state)) {
+            case GOAL -> 1.0d;
+            case SINK -> 0.0d;
+            case UNKNOWN -> {
+                double[] values = bounds.get(state);
+                if (values == null || remaining == 0) {
+                    yield 0.0d;
+                }
+                int last = 2 * (Math.min(remaining, values.length / 2) - 1);
+                if (monotonicity) {
+                    yield values[last];
+                }
+                double lowerBound = 0.0d;
+                for (int index = last; index >= 0; index -= 2) {
+                    lowerBound = Math.max(lowerBound, values[index]);
+                }
+                yield lowerBound;
             }
         };
     }
 
+    @Override
+    public double upperBound(int state, int remaining) {
+        return switch (target.apply(state)) {
+            case GOAL -> 1.0d;
+            case SINK -> 0.0d;
+            case UNKNOWN -> {
+                if (remaining == 0) {
+                    yield 0.0d;
+                }
+                int index = 2 * (remaining - 1) + 1;
+                double[] values = bounds.get(state);
+                double upperBound = values == null || values.length <= index ? 1.0d : values[index];
+                yield upperSeed == null ? upperBound : Math.min(upperBound, upperSeed.applyAsDouble(state));
+            }
+        };
+    }
+
+    @Override
+    public double difference(int state, int remaining) {
+        return upperBound(state, remaining) - lowerBound(state, remaining);
+    }
+
     @Override
     public ToDoubleFunction<Choice> score(int state, int remaining, List<Choice> choices) {
-        return update == Optimization.MIN_VALUE
-                ? choice -> -choice.distribution().sumWeighted(s -> lowerBound(s, remaining - 1))
-                : choice -> choice.distribution().sumWeighted(s -> upperBound(s, remaining - 1));
+        successorRemaining = remaining - 1;
+        return update == Optimization.MIN_VALUE ? lowerScore : upperScore;
     }
 
     @Override
     public Bounds update(int state, int remaining, List<Choice> choices, Choice selected) {
+        MutableBounds result = new MutableBounds();
+        update(state, remaining, choices, selected, result);
+        return result.toBounds();
+    }
+
+    @Override
+    public void update(int state, int remaining, List<Choice> choices, Choice selected, MutableBounds result) {
         assert remaining > 0;
         assert update != Optimization.UNIQUE_VALUE || choices.size() == 1;
 
-        Bounds oldBounds = bounds(state, remaining);
-        if (isOne(oldBounds.lowerBound()) || isZero(oldBounds.upperBound())) {
-            return oldBounds;
+        double oldLowerBound = lowerBound(state, remaining);
+        double oldUpperBound = upperBound(state, remaining);
+        if (isOne(oldLowerBound) || isZero(oldUpperBound)) {
+            result.set(oldLowerBound, oldUpperBound);
+            return;
         }
         assert target.apply(state) == ReachType.UNKNOWN;
 
-        List<Bounds> availableBounds = Lists.transform(
-                choices, choice -> choice.distribution().sumWeightedBounds(s -> bounds(s, remaining - 1)));
-        Bounds bounds = update.select(availableBounds);
-        update(state, remaining, bounds);
-        return bounds;
+        boolean minimize = update == Optimization.MIN_VALUE;
+        double newLowerBound = minimize ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        double newUpperBound = newLowerBound;
+        successorRemaining = remaining - 1;
+        for (Choice choice : choices) {
+            sum(choice.distribution());
+            if (minimize) {
+                newLowerBound = Math.min(newLowerBound, lowerSum);
+                newUpperBound = Math.min(newUpperBound, upperSum);
+            } else {
+                newLowerBound = Math.max(newLowerBound, lowerSum);
+                newUpperBound = Math.max(newUpperBound, upperSum);
+            }
+        }
+        if (choices.isEmpty()) {
+            newLowerBound = 0.0d;
+            newUpperBound = 0.0d;
+        }
+        store(state, remaining, newLowerBound, newUpperBound);
+        result.set(lowerBound(state, remaining), upperBound(state, remaining));
+    }
+
+    /**
+     * Sums the lower and upper bounds of the successors with {@link #successorRemaining} steps in a single pass.
+     */
+    private void sum(Distribution distribution) {
+        lowerSum = 0.0d;
+        upperSum = 0.0d;
+        distribution.forEach((successor, probability) -> {
+            switch (target.apply(successor)) {
+                case GOAL -> {
+                    lowerSum += probability;
+                    upperSum += probability;
+                }
+                case SINK -> {
+                    // Contributes nothing
+                }
+                case UNKNOWN -> {
+                    if (successorRemaining > 0) {
+                        int index = 2 * (successorRemaining - 1);
+                        double[] values = bounds.get(successor);
+                        boolean stored = values != null && index < values.length;
+                        double lowerBound = stored ? values[index] : 0.0d;
+                        double upperBound = stored ? values[index + 1] : 1.0d;
+                        if (upperSeed != null) {
+                            double seed = upperSeed.applyAsDouble(successor);
+                            lowerBound = Math.min(lowerBound, seed);
+                            upperBound = Math.min(upperBound, seed);
+                        }
+                        lowerSum += probability * lowerBound;
+                        upperSum += probability * upperBound;
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public Optimization optimization() {
+        return update;
+    }
+
+    @Override
+    public boolean isFixed(int state) {
+        return target.apply(state) != ReachType.UNKNOWN;
+    }
+
+    @Override
+    public void set(int state, int remaining, double lowerBound, double upperBound) {
+        double lower = Math.max(lowerBound, lowerBound(state, remaining));
+        double upper = Math.min(upperBound, upperBound(state, remaining));
+        store(state, remaining, Math.min(lower, upper), upper);
     }
 
-    public void update(int state, int remaining, Bounds bounds) {
+    private void store(int state, int remaining, double newLowerBound, double newUpperBound) {
         assert remaining > 0;
         if (target.apply(state) != ReachType.UNKNOWN) {
             return;
         }
+        double lowerBound = newLowerBound;
+        double upperBound = newUpperBound;
+        if (upperSeed != null) {
+            double seed = upperSeed.applyAsDouble(state);
+            lowerBound = Math.min(lowerBound, seed);
+            upperBound = Math.min(upperBound, seed);
+        }
 
-        int index = remaining - 1;
-        Bounds[] values = this.bounds.get(state);
-
+        int index = 2 * (remaining - 1);
+        double[] values = this.bounds.get(state);
         if (values == null) {
-            Bounds[] newValues = new Bounds[index + 1];
-            if (monotonicity) {
-                Arrays.fill(newValues, 0, index, Bounds.of(0.0, bounds.upperBound()));
-            } else {
-                Arrays.fill(newValues, 0, index, Bounds.unknownReach());
+            values = new double[index + 2];
+            for (int i = 0; i < index; i += 2) {
+                values[i] = 0.0d;
+                values[i + 1] = monotonicity ? upperBound : 1.0d;
             }
+            this.bounds.put(state, values);
+        } else if (values.length <= index) {
+            int oldLength = values.length;
+            int newLength = Math.max(oldLength * 2, index + 2);
+            values = Arrays.copyOf(values, newLength);
+            double previousLowerBound = monotonicity ? values[oldLength - 2] : 0.0d;
+            for (int i = oldLength; i < newLength; i += 2) {
+                values[i] = i < index ? previousLowerBound : monotonicity ? lowerBound : 0.0d;
+                values[i + 1] = i < index && monotonicity ? upperBound : 1.0d;
+            }
+            this.bounds.put(state, values);
+        }
+        if (monotonicity && index >= 2) {
+            // A lower bound for fewer steps also is one for more, this keeps the lower bounds non-decreasing
+            lowerBound = Math.max(lowerBound, values[index - 2]);
+        }
+        values[index] = lowerBound;
+        values[index + 1] = upperBound;
 
-            newValues[index] = bounds;
-            this.bounds.put(state, newValues);
-        } else {
-            if (values.length <= index) {
-                int oldLength = values.length;
-                int newLength = Math.max(oldLength * 2, index + 1);
-                values = Arrays.copyOf(values, newLength);
-                if (monotonicity) {
-                    for (int i = oldLength - 1; i > 0; i--) {
-                        Bounds b = values[i];
-                        if (b.upperBound() > bounds.upperBound()) {
-                            values[i] = b.withUpper(bounds.upperBound());
-                        } else {
-                            break;
-                        }
-                    }
-                    double previousLowerBound = values[oldLength - 1].lowerBound();
-                    Arrays.fill(values, oldLength, index, Bounds.of(previousLowerBound, bounds.upperBound()));
-                    values[index] = bounds;
-                    Arrays.fill(values, index + 1, newLength, Bounds.of(bounds.lowerBound(), 1.0d));
-                } else {
-                    Arrays.fill(values, oldLength, index, Bounds.unknownReach());
-                    values[index] = bounds;
-                    Arrays.fill(values, index + 1, newLength, Bounds.unknownReach());
-                }
-                this.bounds.put(state, values);
-            } else {
-                values[index] = bounds;
-                if (monotonicity) {
-                    for (int i = index - 1; i > 0; i--) {
-                        Bounds b = values[i];
-                        if (b.upperBound() > bounds.upperBound()) {
-                            values[i] = b.withUpper(bounds.upperBound());
-                        } else {
-                            break;
-                        }
-                    }
-                    for (int i = index + 1; i < values.length; i++) {
-                        Bounds b = values[i];
-                        if (b.lowerBound() < bounds.lowerBound()) {
-                            values[i] = b.withLower(bounds.lowerBound());
-                        } else {
-                            break;
-                        }
-                    }
-                }
+        if (monotonicity) {
+            // Fewer remaining steps cannot reach with higher probability, more steps not with lower probability
+            for (int i = index - 2; i >= 0 && values[i + 1] > upperBound; i -= 2) {
+                values[i + 1] = upperBound;
+            }
+            for (int i = index + 2; i < values.length && values[i] < lowerBound; i += 2) {
+                values[i] = lowerBound;
             }
         }
 
-        assert Arrays.stream(this.bounds.get(state)).allMatch(Objects::nonNull);
-        assert bounds(state, remaining).equals(bounds);
+        assert lowerBound(state, remaining) == lowerBound && upperBound(state, remaining) == upperBound;
     }
 }
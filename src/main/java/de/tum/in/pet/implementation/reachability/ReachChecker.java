@@ -3,13 +3,27 @@ package de.tum.in.pet.implementation.reachability;
 import static com.google.common.base.Preconditions.checkArgument;
 import static picocli.CommandLine.Command;
 import static picocli.CommandLine.Mixin;
+import static picocli.CommandLine.Spec;
 
+import de.tum.in.pet.analyser.Analyser;
+import de.tum.in.pet.analyser.Checkpoint;
 import de.tum.in.pet.analyser.CollapsingAnalyser;
 import de.tum.in.pet.analyser.CollapsingGlobalAnalyser;
 import de.tum.in.pet.analyser.CollapsingSampler;
+import de.tum.in.pet.analyser.CompositeValues;
+import de.tum.in.pet.analyser.PrefixAnalyser;
+import de.tum.in.pet.analyser.PrefixGlobalAnalyser;
 import de.tum.in.pet.analyser.PrefixSampler;
+import de.tum.in.pet.util.CheckerResult;
+import de.tum.in.pet.util.CheckpointMixin;
+import de.tum.in.pet.util.CoreFile;
 import de.tum.in.pet.util.DefaultResult;
+import de.tum.in.pet.util.MemoryBudgetMixin;
+import de.tum.in.pet.util.ModelOptions;
 import de.tum.in.pet.util.PrecisionMixin;
+import de.tum.in.pet.util.SamplingControlMixin;
+import de.tum.in.pet.util.SweepMixin;
+import de.tum.in.pet.util.ValueStorageMixin;
 import de.tum.in.probmodels.cli.DefaultCli;
 import de.tum.in.probmodels.explorer.DefaultExplorer;
 import de.tum.in.probmodels.explorer.Explorer;
@@ -17,28 +31,45 @@ import de.tum.in.probmodels.explorer.SelfLoopHandling;
 import de.tum.in.probmodels.generator.Generator;
 import de.tum.in.probmodels.generator.SafetyGenerator;
 import de.tum.in.probmodels.impl.prism.PrismModelMixin;
+import de.tum.in.probmodels.model.distribution.Distribution;
 import de.tum.in.probmodels.problem.Problem;
 import de.tum.in.probmodels.problem.ProblemInstance;
 import de.tum.in.probmodels.problem.property.ReachType;
 import de.tum.in.probmodels.problem.property.ReachabilityProperty;
+import de.tum.in.probmodels.problem.query.Optimization;
+import de.tum.in.probmodels.problem.query.Query;
 import de.tum.in.probmodels.problem.query.QualitativeQuery;
 import de.tum.in.probmodels.problem.query.QuantitativeQuery;
 import de.tum.in.probmodels.problem.verdict.BoundHandler;
+import de.tum.in.probmodels.problem.verdict.BoundVerdict;
 import de.tum.in.probmodels.problem.verdict.QualitativeVerdict;
 import de.tum.in.probmodels.problem.verdict.QuantitativeVerdict;
 import de.tum.in.probmodels.problem.verdict.Result;
 import de.tum.in.probmodels.util.NatCacheFunction;
+import de.tum.in.probmodels.values.Bounds;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.IntPredicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 
 @SuppressWarnings("PMD.ImmutableField")
 @Command(name = "reachability", mixinStandardHelpOptions = true)
-public final class ReachChecker extends DefaultCli<DefaultResult<?>> {
+public final class ReachChecker extends DefaultCli<CheckerResult> {
     private static final Logger logger = Logger.getLogger(ReachChecker.class.getName());
+    private static final long INITIAL_ROUNDS = 1000L;
 
     @Mixin
     private PrecisionMixin precisionOption;
@@ -46,32 +77,294 @@ public final class ReachChecker extends DefaultCli<DefaultResult<?>> {
     @Mixin
     private PrismModelMixin modelOption;
 
-    @Option(names = "--property", required = true, description = "Property name / index to check")
-    private String expressionName;
+    @Mixin
+    private SamplingControlMixin samplingControlOption;
+
+    @Mixin
+    private MemoryBudgetMixin memoryBudgetOption;
+
+    @Mixin
+    private CheckpointMixin checkpointOption;
+
+    @Mixin
+    private SweepMixin sweepOption;
+
+    @Mixin
+    private ValueStorageMixin valueStorageOption;
+
+    @Spec
+    private CommandSpec spec;
+
+    @Option(
+            names = "--property",
+            required = true,
+            split = ",",
+            description = "Property names / indices to check, unbounded properties and, with --warm-start, the "
+                    + "relaxations of bounded ones share their exploration")
+    private List<String> expressionNames;
 
     @Option(names = "--global", hidden = true)
     private boolean global = false;
 
+    @Option(
+            names = "--warm-start",
+            description = "Seed step-bounded properties with the bounds of their unbounded relaxation")
+    private boolean warmStart = false;
+
+    @Option(
+            names = "--core",
+            description = "Restrict unbounded properties to a core written by the core command, widening results by "
+                    + "its precision")
+    @Nullable
+    private Path coreFile = null;
+
+    @Nullable
+    private CoreFile core = null;
+
     private ReachChecker() {
         // Empty
     }
 
-    private <S> DefaultResult<S> solve(ProblemInstance<S> instance) {
-        Problem<S> expression = instance.problem(expressionName);
-        logger.log(Level.INFO, "Checking expression {0}", new Object[] {expression});
+    private BoundHandler<?> verdict(Query query) {
+        if (query instanceof QualitativeQuery qualitative) {
+            return new QualitativeVerdict(qualitative.comparison(), qualitative.threshold());
+        }
+        assert query instanceof QuantitativeQuery;
+        var precision = precisionOption.parse();
+        return new QuantitativeVerdict(precision.bound(), precision.relativeError());
+    }
 
-        var query = expression.query();
+    /**
+     * The verdict deciding when to stop the analysis of an unbounded property. On a core, results are widened by its
+     * precision, so the analysis continues until the widened bounds are solved.
+     */
+    private BoundVerdict analysisVerdict(Query query, BoundVerdict verdict) {
+        if (core == null) {
+            return verdict;
+        }
+        double error = core.precision();
+        if (query instanceof QuantitativeQuery) {
+            var precision = precisionOption.parse();
+            if (!precision.relativeError() && error >= precision.bound()) {
+                throw new ParameterException(
+                        spec.commandLine(),
+                        "Core precision %s is not below the precision %s".formatted(error, precision.bound()));
+            }
+        }
+        return bounds -> verdict.isSolved(widened(bounds));
+    }
+
+    /**
+     * Adds the precision of the core to the upper bound, since the fringe of the core is treated as sink.
+     */
+    private Bounds widened(Bounds bounds) {
+        return core == null
+                ? bounds
+                : Bounds.reach(bounds.lowerBound(), Math.min(1.0d, bounds.upperBound() + core.precision()));
+    }
+
+    /**
+     * An explorer for unbounded properties, restricted to the core if one is given. States outside the core become
+     * sinks, so the bounds on the core are lower bounds and the fringe adds at most the precision of the core to every
+     * upper bound.
+     */
+    private <S> Explorer<S> unboundedExplorer(Generator<S> generator) {
+        if (core == null) {
+            return DefaultExplorer.of(generator, SelfLoopHandling.KEEP);
+        }
+        CoreFile restriction = core;
+        Explorer<S> explorer =
+                DefaultExplorer.of(new SafetyGenerator<>(generator, restriction::contains), SelfLoopHandling.KEEP);
+        for (S initialState : explorer.initialStates()) {
+            if (!restriction.contains(initialState)) {
+                throw new IllegalArgumentException("Initial state %s is not part of the core".formatted(initialState));
+            }
+        }
+        return explorer;
+    }
+
+    private boolean isSinglePrecision() {
+        return valueStorageOption.isSinglePrecision(precisionOption.parse().bound());
+    }
+
+    private static <S> ReachabilityProperty<S> property(Problem<S> expression) {
         checkArgument(expression.property() instanceof ReachabilityProperty<S>);
-        var property = (ReachabilityProperty<S>) expression.property();
+        return (ReachabilityProperty<S>) expression.property();
+    }
 
-        BoundHandler<?> verdict;
-        if (query instanceof QualitativeQuery qualitative) {
-            verdict = new QualitativeVerdict(qualitative.comparison(), qualitative.threshold());
+    private static boolean isShareable(ReachabilityProperty<?> property) {
+        // Bounded properties need other values and safety properties modify the explored system
+        return property.upperBound().isEmpty() && !property.hasSafety();
+    }
+
+    /**
+     * Runs the given analysers alternately with growing round budgets until all required ones are finished. This lets
+     * analysers which seed each other, see {@code --warm-start}, make progress together. The remaining analysers only
+     * run as long as they are needed for the required ones.
+     */
+    private static void interleave(List<? extends Analyser<?>> analysers, List<? extends Analyser<?>> required) {
+        long rounds = INITIAL_ROUNDS;
+        while (!required.stream().allMatch(Analyser::isFinished)) {
+            for (Analyser<?> analyser : analysers) {
+                if (!analyser.isFinished()) {
+                    analyser.run(rounds);
+                }
+            }
+            rounds = Math.min(rounds * 2, Long.MAX_VALUE / 2);
+        }
+    }
+
+    private <S> PrefixAnalyser<S> boundedAnalyser(
+            Explorer<S> explorer, int stepBound, BoundedReachValues values, BoundHandler<?> verdict) {
+        PrefixAnalyser<S> analyser = global
+                ? new PrefixGlobalAnalyser<>(explorer, stepBound, values, verdict)
+                : new PrefixSampler<>(explorer, stepBound, values, verdict, samplingControlOption.prefix());
+        return memoryBudgetOption.apply(analyser);
+    }
+
+    /**
+     * Solves the given unbounded properties on a shared exploration. With {@code --warm-start}, the unbounded
+     * relaxations of the given bounded properties join the shared exploration and are interleaved with the bounded
+     * analysers.
+     */
+    private <S> Map<String, DefaultResult<S>> solveShared(
+            ProblemInstance<S> instance, List<String> unboundedNames, List<String> boundedNames) {
+        // Relaxations would restrict the bounded properties to the core as well
+        assert core == null || boundedNames.isEmpty();
+        Explorer<S> explorer = unboundedExplorer(instance.model());
+        int memberCount = unboundedNames.size() + boundedNames.size();
+        List<UnboundedReachValues> values = new ArrayList<>(memberCount);
+        List<BoundHandler<?>> verdicts = new ArrayList<>(memberCount);
+        List<BoundVerdict> analysisVerdicts = new ArrayList<>(memberCount);
+        for (String expressionName : unboundedNames) {
+            Problem<S> expression = instance.problem(expressionName);
+            logger.log(Level.INFO, "Checking expression {0}", new Object[] {expression});
+            var property = property(expression);
+            IntPredicate goal = s -> property.reachability().apply(explorer.getState(s)) == ReachType.GOAL;
+            values.add(new UnboundedReachValues(goal, expression.query().optimization(), isSinglePrecision()));
+            BoundHandler<?> verdict = verdict(expression.query());
+            verdicts.add(verdict);
+            analysisVerdicts.add(analysisVerdict(expression.query(), verdict));
+        }
+        List<BoundedReachValues> boundedValues = new ArrayList<>(boundedNames.size());
+        List<PrefixAnalyser<S>> boundedAnalysers = new ArrayList<>(boundedNames.size());
+        for (String expressionName : boundedNames) {
+            Problem<S> expression = instance.problem(expressionName);
+            logger.log(Level.INFO, "Checking expression {0} with shared relaxation", new Object[] {expression});
+            var property = property(expression);
+            var optimization = expression.query().optimization();
+            int stepBound = property.upperBound().orElseThrow();
+            var target = new NatCacheFunction<>(property.reachability(), explorer::getState);
+            var bounded = new BoundedReachValues(target, optimization, true);
+            var relaxed = new UnboundedReachValues(
+                    s -> target.apply(s) == ReachType.GOAL, optimization, isSinglePrecision());
+            relaxed.setLowerSeed(s -> bounded.lowerBoundWithin(s, stepBound));
+            BoundHandler<?> verdict = verdict(expression.query());
+            values.add(relaxed);
+            verdicts.add(verdict);
+            analysisVerdicts.add(verdict);
+            boundedValues.add(bounded);
+            boundedAnalysers.add(boundedAnalyser(explorer, stepBound, bounded, verdict));
+        }
+
+        // The composite checks each member against its own verdict
+        var composite = new CompositeValues<>(values, analysisVerdicts);
+        var verdict = analysisVerdicts.get(0);
+        CollapsingAnalyser<S, Distribution> analyser = global
+                ? new CollapsingGlobalAnalyser<>(explorer, composite, verdict)
+                : new CollapsingSampler<>(explorer, composite, verdict, samplingControlOption.collapsing());
+        memoryBudgetOption.apply(analyser);
+        for (int i = 0; i < boundedNames.size(); i++) {
+            var relaxed = values.get(unboundedNames.size() + i);
+            boundedValues.get(i).setUpperSeed(s -> relaxed.bounds(analyser.representative(s)).upperBound());
+        }
+        if (boundedNames.isEmpty()) {
+            analyser.run();
         } else {
-            assert query instanceof QuantitativeQuery;
-            var precision = precisionOption.parse();
-            verdict = new QuantitativeVerdict(precision.bound(), precision.relativeError());
+            List<Analyser<?>> analysers = new ArrayList<>(boundedAnalysers);
+            analysers.add(0, analyser);
+            interleave(analysers, unboundedNames.isEmpty() ? boundedAnalysers : analysers);
         }
+        Object statistics = analyser.statistics();
+
+        Map<String, DefaultResult<S>> results = new HashMap<>();
+        for (int i = 0; i < unboundedNames.size(); i++) {
+            var member = values.get(i);
+            Result<S, ?> result = Result.of(
+                    explorer.initialStates(),
+                    s -> widened(member.bounds(analyser.representative(explorer.getStateId(s)))),
+                    verdicts.get(i));
+            String expressionName = unboundedNames.get(i);
+            results.put(expressionName, new DefaultResult<>(expressionName, statistics, Map.copyOf(result.asMap())));
+        }
+        for (int i = 0; i < boundedNames.size(); i++) {
+            var bounded = boundedValues.get(i);
+            String expressionName = boundedNames.get(i);
+            int stepBound = property(instance.problem(expressionName)).upperBound().orElseThrow();
+            Result<S, ?> result = Result.of(
+                    explorer.initialStates(),
+                    s -> bounded.bounds(explorer.getStateId(s), stepBound),
+                    verdicts.get(unboundedNames.size() + i));
+            results.put(
+                    expressionName,
+                    new DefaultResult<>(
+                            expressionName, boundedAnalysers.get(i).statistics(), Map.copyOf(result.asMap())));
+        }
+        return results;
+    }
+
+    private <S> CheckerResult solve(ProblemInstance<S> instance) throws IOException {
+        List<String> names = expressionNames.stream().distinct().toList();
+        if (coreFile != null) {
+            core = CoreFile.read(coreFile, ModelOptions.identity(spec));
+            logger.log(
+                    Level.INFO,
+                    "Restricting unbounded properties to core with {0} states and precision {1}",
+                    new Object[] {core.states().size(), core.precision()});
+        }
+        if (names.size() == 1) {
+            return solve(instance, names.get(0));
+        }
+        if (checkpointOption.isEnabled()) {
+            throw new ParameterException(spec.commandLine(), "Checkpoints only support a single property");
+        }
+
+        // Sampling of a shared exploration is guided by one member at a time, which only is sensible if all members
+        // optimize in the same direction. Step-bounded properties join with their unbounded relaxation.
+        Map<Optimization, List<String>> shared = new EnumMap<>(Optimization.class);
+        Map<Optimization, List<String>> relaxed = new EnumMap<>(Optimization.class);
+        for (String name : names) {
+            var property = property(instance.problem(name));
+            var optimization = instance.problem(name).query().optimization();
+            if (isShareable(property)) {
+                shared.computeIfAbsent(optimization, o -> new ArrayList<>()).add(name);
+            } else if (warmStart && core == null && property.upperBound().isPresent()) {
+                relaxed.computeIfAbsent(optimization, o -> new ArrayList<>()).add(name);
+            }
+        }
+        Map<String, DefaultResult<S>> sharedResults = new HashMap<>();
+        for (Optimization optimization : Optimization.values()) {
+            List<String> unboundedGroup = shared.getOrDefault(optimization, List.of());
+            List<String> boundedGroup = relaxed.getOrDefault(optimization, List.of());
+            if (unboundedGroup.size() + boundedGroup.size() > 1) {
+                sharedResults.putAll(solveShared(instance, unboundedGroup, boundedGroup));
+            }
+        }
+        Map<String, DefaultResult<?>> results = new LinkedHashMap<>();
+        for (String name : names) {
+            DefaultResult<S> result = sharedResults.get(name);
+            results.put(name, result == null ? solve(instance, name) : result);
+        }
+        return new PropertyResults(results);
+    }
+
+    private <S> DefaultResult<S> solve(ProblemInstance<S> instance, String expressionName) throws IOException {
+        Problem<S> expression = instance.problem(expressionName);
+        logger.log(Level.INFO, "Checking expression {0}", new Object[] {expression});
+
+        var query = expression.query();
+        var property = property(expression);
+        BoundHandler<?> verdict = verdict(query);
 
         Explorer<S> explorer;
         Result<S, ?> result;
@@ -81,8 +374,27 @@ public final class ReachChecker extends DefaultCli<DefaultResult<?>> {
             var target = new NatCacheFunction<>(property.reachability(), explorer::getState);
             var values = new BoundedReachValues(target, query.optimization(), true);
             int stepBound = property.upperBound().getAsInt();
-            new PrefixSampler<>(explorer, stepBound, values, verdict).run();
-            statistics = explorer.exploredStateCount();
+            PrefixAnalyser<S> analyser = boundedAnalyser(explorer, stepBound, values, verdict);
+            if (warmStart) {
+                // The unbounded problem bounds the step-bounded one from above and conversely, the lower bounds of
+                // the step-bounded problem are lower bounds for the unbounded one. Both work on the same explorer and
+                // run alternately, so each profits from the progress of the other.
+                logger.log(Level.INFO, "Interleaving with unbounded relaxation");
+                var relaxedValues = new UnboundedReachValues(
+                        s -> target.apply(s) == ReachType.GOAL, query.optimization(), isSinglePrecision());
+                relaxedValues.setLowerSeed(s -> values.lowerBoundWithin(s, stepBound));
+                CollapsingAnalyser<S, ?> relaxedAnalyser = memoryBudgetOption.apply(
+                        new CollapsingSampler<>(explorer, relaxedValues, verdict, samplingControlOption.collapsing()));
+                values.setUpperSeed(s -> relaxedAnalyser.bounds(s).upperBound());
+                interleave(List.of(relaxedAnalyser, analyser), List.of(analyser));
+                logger.log(Level.INFO, () -> "Unbounded relaxation: %s".formatted(explorer.initialStateIds()
+                        .intStream()
+                        .mapToObj(s -> s + ": " + relaxedAnalyser.bounds(s))
+                        .collect(Collectors.joining(", "))));
+            } else {
+                analyser.run();
+            }
+            statistics = analyser.statistics();
             result =
                     Result.of(explorer.initialStates(), s -> values.bounds(explorer.getStateId(s), stepBound), verdict);
         } else {
@@ -90,24 +402,47 @@ public final class ReachChecker extends DefaultCli<DefaultResult<?>> {
                     ? new SafetyGenerator<>(
                             instance.model(), s -> property.reachability().apply(s) != ReachType.SINK)
                     : instance.model();
-            explorer = DefaultExplorer.of(propertyGenerator, SelfLoopHandling.KEEP);
+            explorer = unboundedExplorer(propertyGenerator);
             // var target = new ReachabilityCache<>(property.reachability(), explorer::getState);
 
             IntPredicate goal = s -> property.reachability().apply(explorer.getState(s)) == ReachType.GOAL;
-            var values = new UnboundedReachValues(goal, query.optimization());
-            CollapsingAnalyser<S, ?> analyser = (global
-                            ? new CollapsingGlobalAnalyser<>(explorer, values, verdict)
-                            : new CollapsingSampler<>(explorer, values, verdict))
-                    .run();
+            var values = new UnboundedReachValues(goal, query.optimization(), isSinglePrecision());
+            String model = ModelOptions.identity(spec);
+            @Nullable Checkpoint checkpoint = checkpointOption.resume(model, expressionName);
+            if (checkpoint != null) {
+                values.setInitialBounds(checkpoint.lookup(explorer::getState));
+            }
+            BoundVerdict analysisVerdict = analysisVerdict(query, verdict);
+            CollapsingAnalyser<S, ?> analyser = global
+                    ? new CollapsingGlobalAnalyser<>(explorer, values, analysisVerdict)
+                    : new CollapsingSampler<>(explorer, values, analysisVerdict, samplingControlOption.collapsing());
+            if (checkpoint != null) {
+                analyser.resume(checkpoint);
+            }
+            try (@Nullable Checkpoint.Writer writer = checkpointOption.writer(model, expressionName, checkpoint)) {
+                if (writer != null) {
+                    analyser.setCheckpoint(writer, checkpointOption.intervalMillis());
+                }
+                memoryBudgetOption.apply(analyser).run();
+            }
             statistics = analyser.statistics();
-            result = Result.of(explorer.initialStates(), s -> analyser.bounds(explorer.getStateId(s)), verdict);
+            result = Result.of(
+                    explorer.initialStates(), s -> widened(analyser.bounds(explorer.getStateId(s))), verdict);
         }
 
         return new DefaultResult<>(expressionName, statistics, Map.copyOf(result.asMap()));
     }
 
+    /**
+     * The results of several properties, keyed by their name.
+     */
+    public record PropertyResults(Map<String, DefaultResult<?>> properties) implements CheckerResult {}
+
     @Override
-    protected DefaultResult<?> run() throws IOException {
+    protected CheckerResult run() throws IOException {
+        if (sweepOption.isEnabled()) {
+            return sweepOption.run(spec, Set.of(CheckpointMixin.FILE_OPTION), ReachChecker::new, ReachChecker::run);
+        }
         return solve((ProblemInstance<?>) modelOption.parse());
     }
 }
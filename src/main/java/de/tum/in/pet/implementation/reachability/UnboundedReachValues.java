@@ -3,41 +3,164 @@ package de.tum.in.pet.implementation.reachability;
 import static de.tum.in.probmodels.util.Util.isOne;
 import static de.tum.in.probmodels.util.Util.isZero;
 
-import com.google.common.collect.Lists;
-import de.tum.in.naturals.map.Nat2ObjectDenseArrayMap;
 import de.tum.in.pet.analyser.CollapsingValues;
+import de.tum.in.pet.analyser.MutableBounds;
+import de.tum.in.pet.analyser.ValueStorage;
 import de.tum.in.probmodels.graph.Component;
 import de.tum.in.probmodels.model.distribution.Distribution;
 import de.tum.in.probmodels.problem.query.Optimization;
+import de.tum.in.probmodels.problem.verdict.BoundVerdict;
 import de.tum.in.probmodels.util.Util;
 import de.tum.in.probmodels.values.Bounds;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import java.util.List;
 import java.util.function.IntFunction;
 import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.ToDoubleFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
 public class UnboundedReachValues implements CollapsingValues<Distribution> {
-    private final Int2ObjectMap<Bounds> bounds = new Nat2ObjectDenseArrayMap<>(1024);
+    private static final Logger logger = Logger.getLogger(UnboundedReachValues.class.getName());
+
+    // Bounds of states not yet seen are NaN, they are initialized on first access
+    private ValueStorage lowerBounds;
+    private ValueStorage upperBounds;
+    private final MutableBounds result = new MutableBounds();
     private final Optimization update;
     private final IntPredicate goal;
+    private boolean singlePrecision;
+    @Nullable
+    private IntToDoubleFunction lowerSeed = null;
+    @Nullable
+    private IntFunction<Bounds> initialBounds = null;
+
+    // State of the current pass over successors, shared by the reused functions below
+    private int sumState = -1;
+    private double lowerSum = 0.0d;
+    private double upperSum = 0.0d;
+    private double successorMass = 0.0d;
+    private final IntToDoubleFunction lowerBoundFunction = this::lowerBound;
+    private final IntToDoubleFunction upperBoundFunction = this::upperBound;
+    private final ToDoubleFunction<Distribution> lowerScore =
+            d -> -d.sumWeightedExceptJacobi(lowerBoundFunction, sumState);
+    private final ToDoubleFunction<Distribution> upperScore =
+            d -> d.sumWeightedExceptJacobi(upperBoundFunction, sumState);
 
     public UnboundedReachValues(IntPredicate goal, Optimization update) {
+        this(goal, update, false);
+    }
+
+    public UnboundedReachValues(IntPredicate goal, Optimization update, boolean singlePrecision) {
         this.goal = goal;
         this.update = update;
+        this.singlePrecision = singlePrecision;
+        this.lowerBounds = ValueStorage.create(singlePrecision, true, ValueStorage.Rounding.DOWN, Double.NaN);
+        this.upperBounds = ValueStorage.create(singlePrecision, true, ValueStorage.Rounding.UP, Double.NaN);
+    }
+
+    /**
+     * Additionally bound the lower bounds of all states by the given seed, for example the lower bounds of a
+     * step-bounded variant of the problem. The seed is queried lazily and may improve over time.
+     */
+    public void setLowerSeed(IntToDoubleFunction lowerSeed) {
+        this.lowerSeed = lowerSeed;
+    }
+
+    /**
+     * Initialize the bounds of states on first access with the given bounds, for example those of a checkpoint. The
+     * function may return {@code null} for states without known bounds.
+     */
+    public void setInitialBounds(IntFunction<Bounds> initialBounds) {
+        this.initialBounds = initialBounds;
     }
 
     @Override
     public Bounds bounds(int state) {
-        return bounds.computeIfAbsent(
-                state, (IntFunction<? extends Bounds>) (int s) -> goal.test(s) ? Bounds.one() : Bounds.unknownReach());
-        // return goal.test(state) ? Bounds.reachOne() : bounds.getOrDefault(state, Bounds.reachUnknown());
+        return Bounds.reach(lowerBound(state), upperBound(state));
+    }
+
+    /**
+     * With single precision storage, the gap may be dominated by rounding before the verdict is satisfied. All bounds
+     * then are moved to double precision storage, so that the analysis can continue to the requested precision.
+     */
+    @Override
+    public boolean isSolved(int state, BoundVerdict verdict) {
+        double lowerBound = lowerBound(state);
+        double upperBound = upperBound(state);
+        if (verdict.isSolved(Bounds.reach(lowerBound, upperBound))) {
+            return true;
+        }
+        if (singlePrecision && ValueStorage.isRoundingDominated(lowerBound, upperBound)) {
+            logger.log(
+                    Level.WARNING,
+                    "Gap {0} dominated by single precision rounding, continuing with double precision",
+                    new Object[] {upperBound - lowerBound});
+            lowerBounds = lowerBounds.toDoublePrecision();
+            upperBounds = upperBounds.toDoublePrecision();
+            singlePrecision = false;
+        }
+        return false;
+    }
+
+    /**
+     * Moves the bounds to single precision storage, which halves their memory footprint and keeps them sound through
+     * outward rounding.
+     */
+    @Override
+    public void compact() {
+        if (!singlePrecision) {
+            lowerBounds = lowerBounds.toSinglePrecision(ValueStorage.Rounding.DOWN);
+            upperBounds = upperBounds.toSinglePrecision(ValueStorage.Rounding.UP);
+            singlePrecision = true;
+        }
+    }
+
+    private void initialize(int state) {
+        if (goal.test(state)) {
+            lowerBounds.put(state, 1.0d);
+            upperBounds.put(state, 1.0d);
+            return;
+        }
+        Bounds initial = initialBounds == null ? null : initialBounds.apply(state);
+        if (initial == null) {
+            lowerBounds.put(state, 0.0d);
+            upperBounds.put(state, 1.0d);
+        } else {
+            lowerBounds.put(state, initial.lowerBound());
+            upperBounds.put(state, initial.upperBound());
+        }
+    }
+
+    @Override
+    public double lowerBound(int state) {
+        double lowerBound = lowerBounds.get(state);
+        if (Double.isNaN(lowerBound)) {
+            initialize(state);
+            lowerBound = lowerBounds.get(state);
+        }
+        return lowerSeed == null ? lowerBound : Math.max(lowerBound, lowerSeed.applyAsDouble(state));
+    }
+
+    @Override
+    public double upperBound(int state) {
+        double upperBound = upperBounds.get(state);
+        if (Double.isNaN(upperBound)) {
+            initialize(state);
+            upperBound = upperBounds.get(state);
+        }
+        return lowerSeed == null ? upperBound : Math.max(upperBound, lowerSeed.applyAsDouble(state));
+    }
+
+    @Override
+    public double difference(int state) {
+        return upperBound(state) - lowerBound(state);
     }
 
     @Override
     public boolean isUnknown(int state) {
-        return isOne(bounds(state).difference());
+        return isOne(difference(state));
     }
 
     @Override
@@ -48,9 +171,8 @@ public class UnboundedReachValues implements CollapsingValues<Distribution> {
     @Override
     public ToDoubleFunction<Distribution> score(
             int state, List<Distribution> distributions, List<? extends Distribution> choices) {
-        return update == Optimization.MIN_VALUE
-                ? d -> -d.sumWeightedExceptJacobi(this::lowerBound, state)
-                : d -> d.sumWeightedExceptJacobi(this::upperBound, state);
+        sumState = state;
+        return update == Optimization.MIN_VALUE ? lowerScore : upperScore;
     }
 
     @Override
@@ -59,22 +181,96 @@ public class UnboundedReachValues implements CollapsingValues<Distribution> {
         return update(state, distributions);
     }
 
+    @Override
+    public void update(
+            int state,
+            List<Distribution> distributions,
+            List<? extends Distribution> choices,
+            Distribution selected,
+            MutableBounds result) {
+        update(state, distributions, result);
+    }
+
     public Bounds update(int state, List<? extends Distribution> distributions) {
+        update(state, distributions, result);
+        return result.toBounds();
+    }
+
+    public void update(int state, List<? extends Distribution> distributions, MutableBounds result) {
         assert update != Optimization.UNIQUE_VALUE || distributions.size() == 1;
 
-        Bounds stateBounds = bounds(state);
-        if (isOne(stateBounds.lowerBound()) || isZero(stateBounds.upperBound())) {
-            return stateBounds;
+        double oldLowerBound = lowerBound(state);
+        double oldUpperBound = upperBound(state);
+        if (isOne(oldLowerBound) || isZero(oldUpperBound)) {
+            result.set(oldLowerBound, oldUpperBound);
+            return;
         }
         assert !goal.test(state);
 
-        List<Bounds> availableBounds =
-                Lists.transform(distributions, d -> d.sumWeightedExceptJacobiBounds(this::bounds, state)
-                        .orElseGet(Bounds::zero)); // default Bounds::zero
-        Bounds newBounds = update.select(availableBounds);
-        Bounds oldBounds = bounds.put(state, newBounds);
-        assert oldBounds == null || oldBounds.contains(newBounds, Util.WEAK_EPS);
-        return newBounds;
+        boolean minimize = update == Optimization.MIN_VALUE;
+        double newLowerBound = minimize ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        double newUpperBound = newLowerBound;
+        for (Distribution distribution : distributions) {
+            double lowerBound;
+            double upperBound;
+            if (sumExceptJacobi(state, distribution)) {
+                lowerBound = lowerSum;
+                upperBound = upperSum;
+            } else {
+                // Only a self-loop
+                lowerBound = 0.0d;
+                upperBound = 0.0d;
+            }
+            if (minimize) {
+                newLowerBound = Math.min(newLowerBound, lowerBound);
+                newUpperBound = Math.min(newUpperBound, upperBound);
+            } else {
+                newLowerBound = Math.max(newLowerBound, lowerBound);
+                newUpperBound = Math.max(newUpperBound, upperBound);
+            }
+        }
+        if (distributions.isEmpty()) {
+            newLowerBound = 0.0d;
+            newUpperBound = 0.0d;
+        }
+        if (lowerSeed != null) {
+            double seed = lowerSeed.applyAsDouble(state);
+            newLowerBound = Math.max(newLowerBound, seed);
+            newUpperBound = Math.max(newUpperBound, seed);
+        }
+
+        // The stored bounds may be tighter than the update, e.g. when initialized from a checkpoint, and both are sound
+        newLowerBound = Math.max(newLowerBound, oldLowerBound);
+        newUpperBound = Math.min(newUpperBound, oldUpperBound);
+        assert newLowerBound <= newUpperBound + Util.WEAK_EPS;
+        lowerBounds.put(state, newLowerBound);
+        upperBounds.put(state, newUpperBound);
+        // Report the stored values, which may be rounded outward
+        result.set(lowerBound(state), upperBound(state));
+    }
+
+    /**
+     * Computes the Jacobi sums of both bounds over the distribution in a single pass, i.e. the weighted sums over all
+     * successors except the state itself, normalized by their probability. Returns false if there is no such successor.
+     */
+    private boolean sumExceptJacobi(int state, Distribution distribution) {
+        sumState = state;
+        lowerSum = 0.0d;
+        upperSum = 0.0d;
+        successorMass = 0.0d;
+        distribution.forEach((successor, probability) -> {
+            if (successor != sumState) {
+                successorMass += probability;
+                lowerSum += probability * lowerBound(successor);
+                upperSum += probability * upperBound(successor);
+            }
+        });
+        if (successorMass <= 0.0d) {
+            return false;
+        }
+        lowerSum /= successorMass;
+        upperSum /= successorMass;
+        return true;
     }
 
     @Nullable
@@ -85,11 +281,13 @@ public class UnboundedReachValues implements CollapsingValues<Distribution> {
 
     @Override
     public void collapse(int representative, List<Distribution> distributions, Component collapsed) {
-        bounds.keySet().removeAll(collapsed.states());
+        lowerBounds.removeAll(collapsed.states());
+        upperBounds.removeAll(collapsed.states());
         if (collapsed.stateStream().anyMatch(goal)) {
-            bounds.put(representative, Bounds.one());
+            lowerBounds.put(representative, 1.0d);
+            upperBounds.put(representative, 1.0d);
         } else {
-            update(representative, distributions);
+            update(representative, distributions, result);
         }
     }
 }
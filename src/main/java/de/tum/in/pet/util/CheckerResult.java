@@ -0,0 +1,6 @@
+package de.tum.in.pet.util;
+
+/**
+ * The output of a checker command, either the result of a single run or a collection of results.
+ */
+public interface CheckerResult {}
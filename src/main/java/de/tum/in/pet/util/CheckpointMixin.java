@@ -0,0 +1,61 @@
+package de.tum.in.pet.util;
+
+import static picocli.CommandLine.Option;
+
+import de.tum.in.pet.analyser.Checkpoint;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+@SuppressWarnings("PMD.ImmutableField")
+public class CheckpointMixin {
+    public static final String FILE_OPTION = "--checkpoint";
+
+    private static final Logger logger = Logger.getLogger(CheckpointMixin.class.getName());
+
+    @Option(names = FILE_OPTION, description = "Periodically write the bounds of explored states to this file")
+    @Nullable
+    private Path file = null;
+
+    @Option(
+            names = "--checkpoint-interval",
+            description = "Seconds between two checkpoints (default: ${DEFAULT-VALUE})")
+    private long interval = 600L;
+
+    @Option(names = "--resume", description = "Initialize bounds from the checkpoint file, if it exists")
+    private boolean resume = false;
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * A writer for the checkpoints of the given problem on the model instance identified as by {@link
+     * ModelOptions#identity}, or {@code null} if no checkpoint file is given. The states of the resumed checkpoint, if
+     * any, are kept in the written checkpoints until they are explored again.
+     */
+    @Nullable
+    public Checkpoint.Writer writer(String model, String problem, @Nullable Checkpoint resumed) {
+        return file == null ? null : new Checkpoint.Writer(file, model, problem, resumed);
+    }
+
+    public long intervalMillis() {
+        return TimeUnit.SECONDS.toMillis(interval);
+    }
+
+    @Nullable
+    public Checkpoint resume(String model, String problem) throws IOException {
+        if (!resume || file == null) {
+            return null;
+        }
+        if (!Files.exists(file)) {
+            logger.log(Level.INFO, "No checkpoint at {0}, starting from scratch", new Object[] {file});
+            return null;
+        }
+        return Checkpoint.read(file, model, problem);
+    }
+}
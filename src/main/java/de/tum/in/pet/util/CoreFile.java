@@ -0,0 +1,68 @@
+package de.tum.in.pet.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An epsilon-core stored by the string representation of its states, which, unlike state ids, are stable across runs.
+ * All states outside the core are fringe states, reached with probability at most the precision of the core. The core
+ * is only valid for the model instance it was built for, as identified by {@link ModelOptions#identity}.
+ */
+public record CoreFile(String model, double precision, Set<String> states) {
+    private static final int MAGIC = 0x50455452;
+    private static final int VERSION = 2;
+
+    public static void write(Path file, String model, double precision, int size, Iterator<?> states)
+            throws IOException {
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(model);
+            output.writeDouble(precision);
+            output.writeInt(size);
+            int written = 0;
+            while (states.hasNext()) {
+                output.writeUTF(String.valueOf(states.next()));
+                written += 1;
+            }
+            if (written != size) {
+                throw new IOException("Expected %d core states, got %d".formatted(size, written));
+            }
+        }
+    }
+
+    public static CoreFile read(Path file, String model) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a core file: " + file);
+            }
+            String coreModel = input.readUTF();
+            checkArgument(coreModel.equals(model), "Core is for model %s, not %s", coreModel, model);
+            double precision = input.readDouble();
+            int size = input.readInt();
+            Set<String> states = new HashSet<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                states.add(input.readUTF());
+            }
+            return new CoreFile(coreModel, precision, states);
+        }
+    }
+
+    public boolean contains(Object state) {
+        return states.contains(String.valueOf(state));
+    }
+}
@@ -0,0 +1,34 @@
+package de.tum.in.pet.util;
+
+import static picocli.CommandLine.Option;
+
+import de.tum.in.pet.analyser.CollapsingAnalyser;
+import de.tum.in.pet.analyser.MemoryGuard;
+import de.tum.in.pet.analyser.PrefixAnalyser;
+import javax.annotation.Nullable;
+
+@SuppressWarnings("PMD.ImmutableField")
+public class MemoryBudgetMixin {
+    @Option(
+            names = "--memory-budget",
+            description = "Stop with the current bounds once the heap usage after garbage collection exceeds this "
+                    + "fraction of the maximal heap")
+    @Nullable
+    private Double budget = null;
+
+    // Every analyser gets its own guard, so that exceeding the budget in one analysis does not stop later ones
+    @Nullable
+    private MemoryGuard guard() {
+        return budget == null ? null : MemoryGuard.withBudget(budget);
+    }
+
+    public <A extends CollapsingAnalyser<?, ?>> A apply(A analyser) {
+        analyser.setMemoryGuard(guard());
+        return analyser;
+    }
+
+    public <A extends PrefixAnalyser<?>> A apply(A analyser) {
+        analyser.setMemoryGuard(guard());
+        return analyser;
+    }
+}
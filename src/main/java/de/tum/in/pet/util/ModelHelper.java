@@ -6,21 +6,101 @@ import de.tum.in.pet.analyser.PartialSystem;
 import de.tum.in.probmodels.explorer.Explorer;
 import de.tum.in.probmodels.model.Choice;
 import de.tum.in.probmodels.model.TransitionSystem;
+import de.tum.in.probmodels.model.distribution.Distribution;
 import de.tum.in.probmodels.values.Bounds;
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.ints.IntSet;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.IntFunction;
 import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 
+/**
+ * Exports (partial) models. States are rendered in chunks in parallel and written in order, hence the model must not
+ * be modified during the export.
+ */
 public final class ModelHelper {
+    private static final int CHUNK_SIZE = 1 << 12;
+    private static final int BINARY_MAGIC = 0x50455443;
+    private static final int BINARY_VERSION = 1;
+    private static final byte BINARY_INITIAL = 1;
+    private static final byte BINARY_EXPLORED = 2;
+
     private ModelHelper() {}
 
+    /**
+     * Renders the states {@code states[from]} to {@code states[to - 1]}.
+     */
+    @FunctionalInterface
+    private interface ChunkRenderer {
+        ByteBuffer render(int from, int to);
+    }
+
+    private static void writeChunked(FileChannel channel, int stateCount, ChunkRenderer renderer) throws IOException {
+        int chunks = (stateCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // Bound the memory of rendered but not yet written chunks
+        int batch = 4 * Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        for (int start = 0; start < chunks; start += batch) {
+            ByteBuffer[] rendered = IntStream.range(start, Math.min(chunks, start + batch))
+                    .parallel()
+                    .mapToObj(chunk ->
+                            renderer.render(chunk * CHUNK_SIZE, Math.min(stateCount, (chunk + 1) * CHUNK_SIZE)))
+                    .toArray(ByteBuffer[]::new);
+            for (ByteBuffer buffer : rendered) {
+                write(channel, buffer);
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer encode(CharSequence text) {
+        return StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(
+                file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Appends the probability with three decimal places, equivalent to {@code "%.3f"} but without the formatter.
+     */
+    private static void appendProbability(StringBuilder builder, double probability) {
+        long scaled = Math.round(probability * 1000.0d);
+        long fraction = scaled % 1000L;
+        builder.append(scaled / 1000L).append('.');
+        if (fraction < 100L) {
+            builder.append('0');
+        }
+        if (fraction < 10L) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
+
+    private static int[] sortedStates(TransitionSystem system) {
+        int[] states = system.states().toIntArray();
+        Arrays.sort(states);
+        return states;
+    }
+
     public static void modelWithBoundsToDotFile(
             String filename,
             TransitionSystem model,
@@ -41,88 +121,244 @@ public final class ModelHelper {
         TransitionSystem system = annotatedModel.system();
         IntSet exploredStates = annotatedModel.exploredStates();
 
-        var iterator = system.statesStream()
-                .filter(stateFilter)
-                .mapToObj(state -> {
-                    StringBuilder dotString = new StringBuilder(100);
-                    dotString.append(state).append(" [style=filled fillcolor=\"");
-                    boolean appendBounds;
-                    if (highlight != null && highlight.test(state)) {
-                        dotString.append("#22CC22");
-                        appendBounds = true;
-                    } else if (system.isInitialState(state)) {
-                        dotString.append("#9999CC");
-                        appendBounds = true;
-                    } else if (!exploredStates.contains(state)) {
-                        dotString.append("#CC2222");
-                        appendBounds = false;
-                    } else if (values.apply(state).difference() == 0.0d) {
-                        dotString.append("#CD9D87");
-                        appendBounds = true;
+        int[] states = system.statesStream().filter(stateFilter).toArray();
+        // Values need not be thread-safe, hence they are queried upfront
+        Bounds[] bounds = new Bounds[states.length];
+        for (int i = 0; i < states.length; i++) {
+            bounds[i] = values.apply(states[i]);
+        }
+
+        ChunkRenderer renderer = (from, to) -> {
+            StringBuilder dotString = new StringBuilder(100 * (to - from));
+            for (int i = from; i < to; i++) {
+                int state = states[i];
+                Bounds stateBounds = bounds[i];
+                dotString.append(state).append(" [style=filled fillcolor=\"");
+                boolean appendBounds;
+                if (highlight != null && highlight.test(state)) {
+                    dotString.append("#22CC22");
+                    appendBounds = true;
+                } else if (system.isInitialState(state)) {
+                    dotString.append("#9999CC");
+                    appendBounds = true;
+                } else if (!exploredStates.contains(state)) {
+                    dotString.append("#CC2222");
+                    appendBounds = false;
+                } else if (stateBounds.difference() == 0.0d) {
+                    dotString.append("#CD9D87");
+                    appendBounds = true;
+                } else {
+                    dotString.append("#DDDDDD");
+                    appendBounds = true;
+                }
+                dotString.append("\",label=\"").append(state);
+                if (appendBounds) {
+                    dotString.append(' ').append(stateBounds);
+                }
+                dotString.append("\"];\n");
+
+                int actionIndex = 0;
+                for (Choice choice : system.choices(state)) {
+                    Object label = choice.label();
+                    if (choice.distribution().size() == 1) {
+                        IntIterator stateIterator = choice.distribution().support().iterator();
+                        int successor = stateIterator.nextInt();
+                        assert !stateIterator.hasNext();
+
+                        dotString.append(state).append(" -> ").append(successor);
+                        if (label != null) {
+                            dotString.append("[label=\"").append(label).append("\"]");
+                        }
+                        dotString.append(";\n");
                     } else {
-                        dotString.append("#DDDDDD");
-                        appendBounds = true;
-                    }
-                    dotString.append("\",label=\"").append(state);
-                    if (appendBounds) {
-                        dotString.append(' ').append(values.apply(state));
-                    }
-                    dotString.append("\"];\n");
-
-                    int actionIndex = 0;
-                    for (Choice choice : system.choices(state)) {
-                        Object label = choice.label();
-                        if (choice.distribution().size() == 1) {
-                            IntIterator stateIterator =
-                                    choice.distribution().support().iterator();
-                            int successor = stateIterator.nextInt();
-                            assert !stateIterator.hasNext();
-
-                            dotString.append(state).append(" -> ").append(successor);
-                            if (label != null) {
-                                dotString.append("[label=\"").append(label).append("\"]");
+                        String actionNode = "a" + state + "_" + actionIndex;
+                        dotString
+                                .append(state)
+                                .append(" -> ")
+                                .append(actionNode)
+                                .append(" [arrowhead=none,label=\"")
+                                .append(actionIndex);
+                        if (label != null) {
+                            dotString.append(':').append(label);
+                        }
+
+                        dotString.append("\" ];\n");
+                        dotString.append(actionNode).append(" [shape=point,height=0.1];\n");
+
+                        choice.distribution().forEach((target, probability) -> {
+                            dotString.append(actionNode).append(" -> ").append(target);
+                            if (!isEqual(probability, 1.0d)) {
+                                dotString.append(" [label=\"");
+                                appendProbability(dotString, probability);
+                                dotString.append("\"]");
                             }
                             dotString.append(";\n");
-                        } else {
-                            String actionNode = "a%d_%d".formatted(state, actionIndex);
-                            dotString
-                                    .append(state)
-                                    .append(" -> ")
-                                    .append(actionNode)
-                                    .append(" [arrowhead=none,label=\"")
-                                    .append(actionIndex);
-                            if (label != null) {
-                                dotString.append(':').append(label);
-                            }
-
-                            dotString.append("\" ];\n");
-                            dotString.append(actionNode).append(" [shape=point,height=0.1];\n");
-
-                            choice.distribution().forEach((target, probability) -> {
-                                dotString.append(actionNode).append(" -> ").append(target);
-                                if (!isEqual(probability, 1.0d)) {
-                                    dotString
-                                            .append(" [label=\"")
-                                            .append(String.format("%.3f", probability))
-                                            .append("\"]");
-                                }
-                                dotString.append(";\n");
-                            });
-                        }
-                        actionIndex += 1;
+                        });
                     }
-                    dotString.append("}\n");
-                    return dotString.toString();
-                })
-                .iterator();
-
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
-            writer.write("digraph Model {\n\tnode [shape=box];\n");
-            while (iterator.hasNext()) {
-                writer.write(iterator.next());
+                    actionIndex += 1;
+                }
             }
+            return encode(dotString);
+        };
+
+        try (FileChannel channel = open(Paths.get(filename))) {
+            write(channel, encode("digraph Model {\n\tnode [shape=box];\n"));
+            writeChunked(channel, states.length, renderer);
+            write(channel, encode("}\n"));
         } catch (IOException e) {
             throw new AssertionError(e);
         }
     }
+
+    /**
+     * Writes the model in PRISM's explicit format. States are numbered by their order, states without choices (in
+     * particular unexplored ones) get a self-loop. The labels file marks initial, deadlock and unexplored states.
+     */
+    public static void modelToExplicitFiles(Path transitionsFile, Path labelsFile, PartialSystem model)
+            throws IOException {
+        TransitionSystem system = model.system();
+        IntSet exploredStates = model.exploredStates();
+        int[] states = sortedStates(system);
+        boolean deterministic = system.isDeterministic();
+
+        long choiceCount = 0L;
+        long transitionCount = 0L;
+        for (int state : states) {
+            List<Choice> choices = system.choices(state);
+            if (choices.isEmpty()) {
+                choiceCount += 1L;
+                transitionCount += 1L;
+            } else {
+                choiceCount += choices.size();
+                for (Choice choice : choices) {
+                    transitionCount += choice.distribution().size();
+                }
+            }
+        }
+
+        ChunkRenderer transitions = (from, to) -> {
+            StringBuilder builder = new StringBuilder(32 * (to - from));
+            for (int index = from; index < to; index++) {
+                int source = index;
+                List<Choice> choices = system.choices(states[index]);
+                if (choices.isEmpty()) {
+                    builder.append(source);
+                    if (!deterministic) {
+                        builder.append(" 0");
+                    }
+                    builder.append(' ').append(source).append(" 1\n");
+                    continue;
+                }
+                int choiceIndex = 0;
+                for (Choice choice : choices) {
+                    int currentChoice = choiceIndex;
+                    Object label = choice.label();
+                    choice.distribution().forEach((target, probability) -> {
+                        builder.append(source);
+                        if (!deterministic) {
+                            builder.append(' ').append(currentChoice);
+                        }
+                        builder.append(' ')
+                                .append(Arrays.binarySearch(states, target))
+                                .append(' ')
+                                .append(probability);
+                        if (!deterministic && label != null) {
+                            builder.append(' ').append(label);
+                        }
+                        builder.append('\n');
+                    });
+                    choiceIndex += 1;
+                }
+            }
+            return encode(builder);
+        };
+        try (FileChannel channel = open(transitionsFile)) {
+            String header = deterministic
+                    ? "%d %d%n".formatted(states.length, transitionCount)
+                    : "%d %d %d%n".formatted(states.length, choiceCount, transitionCount);
+            write(channel, encode(header));
+            writeChunked(channel, states.length, transitions);
+        }
+
+        ChunkRenderer labels = (from, to) -> {
+            StringBuilder builder = new StringBuilder();
+            for (int index = from; index < to; index++) {
+                int state = states[index];
+                boolean initial = system.isInitialState(state);
+                // Unexplored states have no choices either, but are only marked as fringe
+                boolean fringe = !exploredStates.contains(state);
+                boolean deadlock = !fringe && system.choices(state).isEmpty();
+                if (!initial && !deadlock && !fringe) {
+                    continue;
+                }
+                builder.append(index).append(':');
+                if (initial) {
+                    builder.append(" 0");
+                }
+                if (deadlock) {
+                    builder.append(" 1");
+                }
+                if (fringe) {
+                    builder.append(" 2");
+                }
+                builder.append('\n');
+            }
+            return encode(builder);
+        };
+        try (FileChannel channel = open(labelsFile)) {
+            write(channel, encode("0=\"init\" 1=\"deadlock\" 2=\"fringe\"\n"));
+            writeChunked(channel, states.length, labels);
+        }
+    }
+
+    /**
+     * Writes the model in a compact binary format: a header (magic, version, number of states) followed by one record
+     * per state in order, consisting of its id, flags (initial, explored), number of choices and for each choice the
+     * number of successors followed by pairs of successor index and probability. Numbers are big-endian.
+     */
+    public static void modelToBinaryFile(Path file, PartialSystem model) throws IOException {
+        TransitionSystem system = model.system();
+        IntSet exploredStates = model.exploredStates();
+        int[] states = sortedStates(system);
+
+        ChunkRenderer renderer = (from, to) -> {
+            int size = 0;
+            for (int index = from; index < to; index++) {
+                size += Integer.BYTES + 1 + Integer.BYTES;
+                for (Choice choice : system.choices(states[index])) {
+                    size += Integer.BYTES + choice.distribution().size() * (Integer.BYTES + Double.BYTES);
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+            for (int index = from; index < to; index++) {
+                int state = states[index];
+                byte flags = 0;
+                if (system.isInitialState(state)) {
+                    flags |= BINARY_INITIAL;
+                }
+                if (exploredStates.contains(state)) {
+                    flags |= BINARY_EXPLORED;
+                }
+                List<Choice> choices = system.choices(state);
+                buffer.putInt(state).put(flags).putInt(choices.size());
+                for (Choice choice : choices) {
+                    Distribution distribution = choice.distribution();
+                    buffer.putInt(distribution.size());
+                    distribution.forEach((target, probability) ->
+                            buffer.putInt(Arrays.binarySearch(states, target)).putDouble(probability));
+                }
+            }
+            return buffer.flip();
+        };
+
+        try (FileChannel channel = open(file)) {
+            ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES)
+                    .putInt(BINARY_MAGIC)
+                    .putInt(BINARY_VERSION)
+                    .putInt(states.length)
+                    .flip();
+            write(channel, header);
+            writeChunked(channel, states.length, renderer);
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package de.tum.in.pet.util;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import picocli.CommandLine.Model.CommandSpec;
+
+/**
+ * Access to the model options of a command, which are declared by the mixin of the model library.
+ */
+public final class ModelOptions {
+    public static final String MODEL_OPTION = "--model";
+    public static final String CONSTANTS_OPTION = "--const";
+
+    private ModelOptions() {
+        // Empty
+    }
+
+    public static Path model(CommandSpec spec) {
+        return Path.of(String.valueOf(spec.findOption(MODEL_OPTION).<Object>getValue()));
+    }
+
+    /**
+     * The constant definitions of the command as comma separated list, empty if none are given.
+     */
+    public static String constants(CommandSpec spec) {
+        @Nullable Object constants = spec.findOption(CONSTANTS_OPTION).getValue();
+        if (constants == null) {
+            return "";
+        }
+        return constants instanceof Collection<?> collection
+                ? collection.stream().map(String::valueOf).collect(Collectors.joining(","))
+                : constants.toString();
+    }
+
+    /**
+     * Identifies the model instance of the command, i.e. the model file together with the constant definitions. Files
+     * derived from the model store it to detect that they are used with a different instance.
+     */
+    public static String identity(CommandSpec spec) {
+        String constants = constants(spec);
+        String model = model(spec).toAbsolutePath().normalize().toString();
+        return constants.isEmpty() ? model : model + "[" + constants + "]";
+    }
+}
@@ -0,0 +1,49 @@
+package de.tum.in.pet.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses comma separated lists of values in which integer ranges may be given as {@code from..to[:step]}.
+ */
+public final class Ranges {
+    private Ranges() {
+        // Empty
+    }
+
+    /**
+     * Expands the ranges of the given list, keeping all other values as given and the order of the list.
+     */
+    public static List<String> expand(String option) {
+        List<String> values = new ArrayList<>();
+        for (String part : option.split(",")) {
+            String trimmed = part.trim();
+            int range = trimmed.indexOf("..");
+            if (range < 0) {
+                if (trimmed.isEmpty()) {
+                    throw new IllegalArgumentException("Empty value in " + option);
+                }
+                values.add(trimmed);
+                continue;
+            }
+            int from = Integer.parseInt(trimmed.substring(0, range).trim());
+            String[] rest = trimmed.substring(range + 2).split(":");
+            int to = Integer.parseInt(rest[0].trim());
+            int step = rest.length > 1 ? Integer.parseInt(rest[1].trim()) : 1;
+            if (rest.length > 2 || step <= 0 || to < from) {
+                throw new IllegalArgumentException("Invalid range " + trimmed);
+            }
+            for (long value = from; value <= to; value += step) {
+                values.add(Long.toString(value));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Expands the given list into the sorted distinct integers it contains.
+     */
+    public static int[] integers(String option) {
+        return expand(option).stream().mapToInt(Integer::parseInt).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,33 @@
+package de.tum.in.pet.util;
+
+import static picocli.CommandLine.Option;
+
+import de.tum.in.pet.analyser.BanditController;
+import de.tum.in.pet.analyser.SamplingController;
+
+@SuppressWarnings("PMD.ImmutableField")
+public class SamplingControlMixin {
+    @Option(
+            names = "--sampling-control",
+            description = "Control of the sampling heuristics: fixed or bandit (default: ${DEFAULT-VALUE})")
+    private String control = "fixed";
+
+    @Option(names = "--seed", description = "Seed of all random decisions of the samplers (default: ${DEFAULT-VALUE})")
+    private long seed = SamplingController.DEFAULT_SEED;
+
+    public SamplingController collapsing() {
+        return parse(SamplingController.COLLAPSING_DEFAULT, true);
+    }
+
+    public SamplingController prefix() {
+        return parse(SamplingController.PREFIX_DEFAULT, false);
+    }
+
+    private SamplingController parse(SamplingController.Parameters defaults, boolean collapsing) {
+        return switch (control) {
+            case "fixed" -> SamplingController.fixed(defaults, seed);
+            case "bandit" -> BanditController.around(defaults, collapsing, seed);
+            default -> throw new IllegalArgumentException("Unknown sampling control " + control);
+        };
+    }
+}
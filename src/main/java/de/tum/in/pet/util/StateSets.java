@@ -0,0 +1,86 @@
+package de.tum.in.pet.util;
+
+import de.tum.in.naturals.set.NatBitSet;
+import de.tum.in.naturals.set.NatBitSetFactory;
+import de.tum.in.naturals.set.NatBitSets;
+import de.tum.in.naturals.set.RoaringNatBitSetFactory;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Locale;
+
+/**
+ * Selects the representation of state sets. Dense and roaring replace the global bit set factory; auto keeps dense
+ * sets by default and only stores the large, sparse sets created through this class compressed. Sets created inside
+ * the library, e.g. by the quotient, always follow the global factory.
+ */
+public final class StateSets {
+    public enum Backend {
+        DENSE,
+        ROARING,
+        AUTO
+    }
+
+    // A dense bit set needs one bit per possible element, a compressed set roughly two bytes per element
+    private static final int SPARSE_DENSITY_FACTOR = 16;
+    private static final int SPARSE_MINIMAL_SIZE = 1 << 16;
+
+    private static final NatBitSetFactory ROARING_FACTORY = new RoaringNatBitSetFactory();
+    private static Backend backend = Backend.DENSE;
+
+    private StateSets() {
+        // Empty
+    }
+
+    public static void setBackend(String name) {
+        Backend selected = Backend.valueOf(name.toUpperCase(Locale.ROOT));
+        if (selected == Backend.ROARING) {
+            NatBitSets.setFactory(ROARING_FACTORY);
+        }
+        backend = selected;
+    }
+
+    /**
+     * Returns a modifiable copy of the given states, compressed if auto selection is enabled and the set is sparse.
+     */
+    public static NatBitSet modifiableCopyOf(IntSet states) {
+        if (backend == Backend.AUTO && isSparse(states)) {
+            NatBitSet copy = ROARING_FACTORY.set();
+            copy.addAll(states);
+            return copy;
+        }
+        return NatBitSets.ensureModifiable(NatBitSets.copyOf(states));
+    }
+
+    /**
+     * Returns an empty modifiable set for the given number of states, of which the given one is the largest. The set is
+     * compressed if auto selection is enabled and the states are sparse.
+     */
+    public static NatBitSet set(int size, int largest) {
+        if (backend == Backend.AUTO && isSparse(size, largest)) {
+            return ROARING_FACTORY.set();
+        }
+        return NatBitSets.ensureModifiable(NatBitSets.set());
+    }
+
+    private static boolean isSparse(int size, int largest) {
+        return size >= SPARSE_MINIMAL_SIZE && (long) size * SPARSE_DENSITY_FACTOR < (long) largest + 1;
+    }
+
+    private static boolean isSparse(IntSet states) {
+        int size = states.size();
+        if (size < SPARSE_MINIMAL_SIZE) {
+            return false;
+        }
+        int largest;
+        if (states instanceof NatBitSet bitSet) {
+            largest = bitSet.lastInt();
+        } else {
+            largest = -1;
+            IntIterator iterator = states.iterator();
+            while (iterator.hasNext()) {
+                largest = Math.max(largest, iterator.nextInt());
+            }
+        }
+        return isSparse(size, largest);
+    }
+}
@@ -0,0 +1,144 @@
+package de.tum.in.pet.util;
+
+import static picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import picocli.CommandLine;
+import picocli.CommandLine.Model.ArgSpec;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Model.OptionSpec;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.ParseResult;
+
+/**
+ * Runs a command once for each value of an undefined model constant inside the same process, by re-invoking it with
+ * the original arguments and the respective constant definition.
+ */
+@SuppressWarnings("PMD.ImmutableField")
+public class SweepMixin {
+    private static final Logger logger = Logger.getLogger(SweepMixin.class.getName());
+
+    private static final String SWEEP_OPTION = "--sweep";
+
+    @Option(
+            names = SWEEP_OPTION,
+            description = "Check each value of an undefined constant, given as NAME=v1,v2,... with values or ranges "
+                    + "from..to[:step]")
+    @Nullable
+    private String sweep = null;
+
+    public boolean isEnabled() {
+        return sweep != null;
+    }
+
+    /**
+     * Runs a fresh instance of the command for each value of the swept constant and returns the results keyed by the
+     * constant definition. The files given to the output options are suffixed with the respective definition, so the
+     * runs do not overwrite each other.
+     *
+     * <p>Each run parses the model again, since the model mixin of the model library only offers to parse the model
+     * together with the constant definitions.
+     */
+    public <C> SweepResult run(
+            CommandSpec spec, Set<String> outputOptions, Supplier<C> commands, Invocation<C> invocation)
+            throws IOException {
+        assert sweep != null;
+        ParseResult parseResult = spec.commandLine().getParseResult();
+        String name = constantName(sweep);
+        for (String constant : ModelOptions.constants(spec).split(",")) {
+            if (constant.split("=", 2)[0].trim().equals(name)) {
+                throw new ParameterException(
+                        spec.commandLine(), "Constant %s is both swept and defined".formatted(name));
+            }
+        }
+
+        Map<String, CheckerResult> results = new LinkedHashMap<>();
+        for (String definition : definitions(sweep)) {
+            logger.log(Level.INFO, "Sweep: Checking {0}", new Object[] {definition});
+            C command = commands.get();
+            new CommandLine(command)
+                    .parseArgs(arguments(parseResult, outputOptions, definition).toArray(String[]::new));
+            results.put(definition, invocation.run(command));
+        }
+        return new SweepResult(results);
+    }
+
+    private static String constantName(String sweep) {
+        int separator = sweep.indexOf('=');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid sweep " + sweep);
+        }
+        return sweep.substring(0, separator).trim();
+    }
+
+    private static List<String> definitions(String sweep) {
+        String name = constantName(sweep);
+        return Ranges.expand(sweep.substring(sweep.indexOf('=') + 1)).stream()
+                .map(value -> name + "=" + value)
+                .toList();
+    }
+
+    /**
+     * Rebuilds the arguments of the command from the options matched by the original invocation, so that values are
+     * never mistaken for option names. All constant definitions are joined into a single one together with the
+     * definition of the swept constant.
+     */
+    private static List<String> arguments(ParseResult parseResult, Set<String> outputOptions, String definition) {
+        List<String> arguments = new ArrayList<>();
+        List<String> constants = new ArrayList<>();
+        for (ArgSpec argument : new LinkedHashSet<>(parseResult.matchedArgs())) {
+            if (!argument.isOption()) {
+                arguments.addAll(argument.originalStringValues());
+                continue;
+            }
+            OptionSpec option = (OptionSpec) argument;
+            String name = option.longestName();
+            if (name.equals(SWEEP_OPTION)) {
+                continue;
+            }
+            if (option.arity().max() == 0) {
+                arguments.add(name);
+                continue;
+            }
+            if (name.equals(ModelOptions.CONSTANTS_OPTION)) {
+                constants.addAll(option.originalStringValues());
+                continue;
+            }
+            for (String value : option.originalStringValues()) {
+                arguments.add(name);
+                arguments.add(outputOptions.contains(name) ? suffixed(value, definition) : value);
+            }
+        }
+        constants.add(definition);
+        arguments.add(ModelOptions.CONSTANTS_OPTION);
+        arguments.add(String.join(",", constants));
+        return arguments;
+    }
+
+    private static String suffixed(String file, String definition) {
+        Path path = Path.of(file);
+        String name = path.getFileName().toString();
+        String suffix = definition.replace('=', '-');
+        int extension = name.lastIndexOf('.');
+        String suffixedName = extension <= 0
+                ? name + "." + suffix
+                : name.substring(0, extension) + "." + suffix + name.substring(extension);
+        return path.resolveSibling(suffixedName).toString();
+    }
+
+    @FunctionalInterface
+    public interface Invocation<C> {
+        CheckerResult run(C command) throws IOException;
+    }
+}
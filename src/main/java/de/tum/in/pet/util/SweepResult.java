@@ -0,0 +1,8 @@
+package de.tum.in.pet.util;
+
+import java.util.Map;
+
+/**
+ * The results of a command for each value of a swept constant, keyed by the constant definition.
+ */
+public record SweepResult(Map<String, CheckerResult> results) implements CheckerResult {}
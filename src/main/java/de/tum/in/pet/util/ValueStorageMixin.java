@@ -0,0 +1,25 @@
+package de.tum.in.pet.util;
+
+import static picocli.CommandLine.Option;
+
+@SuppressWarnings("PMD.ImmutableField")
+public class ValueStorageMixin {
+    // Single precision values have a relative error of about 6e-8, i.e. even a gap of several units in the last place
+    // near 1 is about 2e-6, well below this precision
+    private static final double SINGLE_PRECISION_THRESHOLD = 1.0e-4;
+
+    @Option(
+            names = "--value-storage",
+            description = "Storage of values: double, float (rounded outward) or auto, which uses float for "
+                    + "precisions of at least 1e-4 (default: ${DEFAULT-VALUE})")
+    private String storage = "auto";
+
+    public boolean isSinglePrecision(double precision) {
+        return switch (storage) {
+            case "double" -> false;
+            case "float" -> true;
+            case "auto" -> precision >= SINGLE_PRECISION_THRESHOLD;
+            default -> throw new IllegalArgumentException("Unknown value storage " + storage);
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package de.tum.in.pet.analyser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class SamplingIndexTest {
+    private static SamplingIndex.Tree tree(double... weights) {
+        int[] successors = new int[weights.length];
+        double[] probabilities = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            successors[i] = 10 + i;
+            probabilities[i] = 1.0d / weights.length;
+        }
+        SamplingIndex.Tree tree = new SamplingIndex.Tree(successors, probabilities);
+        for (int i = 0; i < weights.length; i++) {
+            tree.set(i, weights[i]);
+        }
+        return tree;
+    }
+
+    private static int linearFind(double[] weights, double value) {
+        double sum = 0.0d;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            if (sum > value) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    @Test
+    void findSelectsByPrefixSums() {
+        SamplingIndex.Tree tree = tree(1.0d, 2.0d, 3.0d, 4.0d);
+        assertEquals(10.0d, tree.total());
+        assertEquals(0, tree.find(0.0d));
+        assertEquals(0, tree.find(0.5d));
+        assertEquals(1, tree.find(1.0d));
+        assertEquals(1, tree.find(2.5d));
+        assertEquals(2, tree.find(3.0d));
+        assertEquals(3, tree.find(9.5d));
+        // Values beyond the total are clamped to the last index
+        assertEquals(3, tree.find(10.0d));
+        assertEquals(13, tree.successor(tree.find(9.5d)));
+    }
+
+    @Test
+    void findSkipsZeroWeights() {
+        SamplingIndex.Tree tree = tree(1.0d, 0.0d, 0.0d, 1.0d, 0.0d);
+        assertEquals(0, tree.find(0.5d));
+        assertEquals(3, tree.find(1.0d));
+        assertEquals(3, tree.find(1.5d));
+    }
+
+    @Test
+    void setUpdatesSums() {
+        SamplingIndex.Tree tree = tree(1.0d, 2.0d, 3.0d, 4.0d);
+        tree.set(1, 0.0d);
+        assertEquals(8.0d, tree.total());
+        assertEquals(0.0d, tree.weight(1));
+        assertEquals(2, tree.find(1.5d));
+        tree.set(1, 5.0d);
+        assertEquals(13.0d, tree.total());
+        assertEquals(1, tree.find(5.5d));
+    }
+
+    @Test
+    void incrementalUpdatesMatchRebuild() {
+        Random random = new Random(42L);
+        for (int size : new int[] {1, 5, 7, 8, 33, 100}) {
+            double[] weights = new double[size];
+            SamplingIndex.Tree tree = tree(weights);
+            for (int update = 0; update < 4 * size; update++) {
+                int index = random.nextInt(size);
+                weights[index] = random.nextInt(4) == 0 ? 0.0d : random.nextDouble();
+                tree.set(index, weights[index]);
+            }
+            SamplingIndex.Tree rebuilt = tree(weights);
+            rebuilt.rebuild();
+            for (int sample = 0; sample < 100; sample++) {
+                double value = random.nextDouble() * tree.total();
+                int expected = linearFind(weights, value);
+                assertEquals(expected, tree.find(value));
+                assertEquals(expected, rebuilt.find(value));
+            }
+        }
+    }
+}
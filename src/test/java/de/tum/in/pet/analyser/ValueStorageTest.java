@@ -0,0 +1,103 @@
+package de.tum.in.pet.analyser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Test;
+
+class ValueStorageTest {
+    @Test
+    void roundingIsOutward() {
+        // 0.1 has no exact float representation, so the two directions yield neighbouring floats
+        float down = ValueStorage.round(0.1d, ValueStorage.Rounding.DOWN);
+        float up = ValueStorage.round(0.1d, ValueStorage.Rounding.UP);
+        assertTrue(down < 0.1d);
+        assertTrue(up > 0.1d);
+        assertEquals(up, Math.nextUp(down));
+    }
+
+    @Test
+    void roundingKeepsExactValues() {
+        assertEquals(0.5f, ValueStorage.round(0.5d, ValueStorage.Rounding.DOWN));
+        assertEquals(0.5f, ValueStorage.round(0.5d, ValueStorage.Rounding.UP));
+        assertEquals(1.0f, ValueStorage.round(1.0d, ValueStorage.Rounding.UP));
+    }
+
+    @Test
+    void roundingDominance() {
+        assertTrue(ValueStorage.isRoundingDominated(0.0d, 0.0d));
+        assertTrue(ValueStorage.isRoundingDominated(0.5d, 0.5d + Math.ulp(0.5f)));
+        assertFalse(ValueStorage.isRoundingDominated(0.5d, 0.501d));
+        // The magnitude of the bounds matters, not only the gap
+        assertFalse(ValueStorage.isRoundingDominated(1.0e-10d, 1.0e-9d));
+    }
+
+    @Test
+    void singlePrecisionStorageRoundsOutward() {
+        for (boolean dense : new boolean[] {true, false}) {
+            ValueStorage lower = ValueStorage.create(true, dense, ValueStorage.Rounding.DOWN, Double.NaN);
+            ValueStorage upper = ValueStorage.create(true, dense, ValueStorage.Rounding.UP, Double.NaN);
+            lower.put(3, 0.1d);
+            upper.put(3, 0.1d);
+            assertTrue(lower.get(3) < 0.1d);
+            assertTrue(upper.get(3) > 0.1d);
+            assertTrue(Double.isNaN(lower.get(2)));
+        }
+    }
+
+    @Test
+    void denseStorageGrows() {
+        ValueStorage storage = ValueStorage.create(true, true, ValueStorage.Rounding.DOWN, 1.0d);
+        storage.put(5000, 0.5d);
+        assertEquals(0.5d, storage.get(5000));
+        assertEquals(1.0d, storage.get(4999));
+        assertEquals(1.0d, storage.get(100_000));
+    }
+
+    @Test
+    void doublePrecisionKeepsValues() {
+        for (boolean dense : new boolean[] {true, false}) {
+            ValueStorage storage = ValueStorage.create(true, dense, ValueStorage.Rounding.UP, Double.NaN);
+            storage.put(4, 0.1d);
+            double stored = storage.get(4);
+            ValueStorage precise = storage.toDoublePrecision();
+            assertEquals(stored, precise.get(4));
+            assertTrue(Double.isNaN(precise.get(3)));
+            precise.put(4, 0.1d);
+            assertEquals(0.1d, precise.get(4));
+            assertSame(precise, precise.toDoublePrecision());
+        }
+    }
+
+    @Test
+    void compactionRoundsOutward() {
+        for (boolean dense : new boolean[] {true, false}) {
+            ValueStorage lower = ValueStorage.create(false, dense, ValueStorage.Rounding.DOWN, Double.NaN);
+            ValueStorage upper = ValueStorage.create(false, dense, ValueStorage.Rounding.UP, Double.NaN);
+            lower.put(2, 0.1d);
+            upper.put(2, 0.1d);
+            ValueStorage compactLower = lower.toSinglePrecision(ValueStorage.Rounding.DOWN);
+            ValueStorage compactUpper = upper.toSinglePrecision(ValueStorage.Rounding.UP);
+            assertTrue(compactLower.get(2) < 0.1d);
+            assertTrue(compactUpper.get(2) > 0.1d);
+            assertTrue(Double.isNaN(compactLower.get(1)));
+            assertSame(compactLower, compactLower.toSinglePrecision(ValueStorage.Rounding.DOWN));
+        }
+    }
+
+    @Test
+    void removeRestoresDefault() {
+        for (boolean singlePrecision : new boolean[] {true, false}) {
+            ValueStorage storage =
+                    ValueStorage.create(singlePrecision, true, ValueStorage.Rounding.UP, Double.NaN);
+            storage.put(1, 0.25d);
+            storage.put(2, 0.75d);
+            storage.removeAll(IntSet.of(1));
+            assertTrue(Double.isNaN(storage.get(1)));
+            assertEquals(0.75d, storage.get(2));
+        }
+    }
+}
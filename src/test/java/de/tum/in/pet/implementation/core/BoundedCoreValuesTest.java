@@ -0,0 +1,72 @@
+package de.tum.in.pet.implementation.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedCoreValuesTest {
+    @Test
+    void emptyBreakpointsAreTrivial() {
+        var breakpoints = new BoundedCoreValues.Breakpoints();
+        assertEquals(1.0d, breakpoints.get(0));
+        assertEquals(1.0d, breakpoints.get(100));
+    }
+
+    @Test
+    void valuesApplyUpToTheirStep() {
+        var breakpoints = new BoundedCoreValues.Breakpoints();
+        breakpoints.update(3, 0.5d);
+        assertEquals(0.5d, breakpoints.get(0));
+        assertEquals(0.5d, breakpoints.get(3));
+        assertEquals(1.0d, breakpoints.get(4));
+
+        breakpoints.update(5, 0.7d);
+        assertEquals(0.5d, breakpoints.get(3));
+        assertEquals(0.7d, breakpoints.get(4));
+        assertEquals(0.7d, breakpoints.get(5));
+        assertEquals(1.0d, breakpoints.get(6));
+    }
+
+    @Test
+    void smallerValueDominatesBreakpointsBelow() {
+        var breakpoints = new BoundedCoreValues.Breakpoints();
+        breakpoints.update(1, 0.3d);
+        breakpoints.update(3, 0.5d);
+        breakpoints.update(5, 0.7d);
+        breakpoints.update(4, 0.4d);
+        assertEquals(0.3d, breakpoints.get(1));
+        assertEquals(0.4d, breakpoints.get(2));
+        assertEquals(0.4d, breakpoints.get(4));
+        assertEquals(0.7d, breakpoints.get(5));
+
+        // Replacing an existing breakpoint also removes dominated ones
+        breakpoints.update(5, 0.2d);
+        assertEquals(0.2d, breakpoints.get(0));
+        assertEquals(0.2d, breakpoints.get(5));
+        assertEquals(1.0d, breakpoints.get(6));
+    }
+
+    @Test
+    void equalValueIsIgnored() {
+        var breakpoints = new BoundedCoreValues.Breakpoints();
+        breakpoints.update(4, 0.5d);
+        breakpoints.update(2, 0.5d);
+        assertEquals(0.5d, breakpoints.get(4));
+        assertEquals(1.0d, breakpoints.get(5));
+    }
+
+    @Test
+    void manyBreakpoints() {
+        var breakpoints = new BoundedCoreValues.Breakpoints();
+        for (int i = 0; i < 20; i++) {
+            breakpoints.update(2 * i, 0.04d * i);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0.04d * i, breakpoints.get(2 * i));
+            if (i > 0) {
+                assertEquals(0.04d * i, breakpoints.get(2 * i - 1));
+            }
+        }
+        assertEquals(1.0d, breakpoints.get(39));
+    }
+}
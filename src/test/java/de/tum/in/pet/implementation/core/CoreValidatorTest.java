@@ -0,0 +1,92 @@
+package de.tum.in.pet.implementation.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.tum.in.probmodels.values.Bounds;
+import org.junit.jupiter.api.Test;
+
+class CoreValidatorTest {
+    private static final double PRECISION = 1.0e-6d;
+
+    private static void assertBounds(double expected, Bounds bounds, double precision) {
+        assertTrue(bounds.lowerBound() <= expected + 1.0e-12d, "Lower bound " + bounds.lowerBound());
+        assertTrue(bounds.upperBound() >= expected - 1.0e-12d, "Upper bound " + bounds.upperBound());
+        assertTrue(bounds.difference() <= precision, "Gap " + bounds.difference());
+    }
+
+    /**
+     * State 0 moves to the sink 1 with 0.9 and to the fringe state 2 with 0.1.
+     */
+    private static CoreValidator chain() {
+        return new CoreValidator(
+                0,
+                new boolean[] {false, false, true},
+                new int[] {0, 1, 1, 1},
+                new int[] {0, 2},
+                new int[] {1, 2},
+                new double[] {0.9d, 0.1d});
+    }
+
+    /**
+     * States 0 and 1 form an end component, state 1 may leave it to the fringe state 2 with 0.3 and the sink 3 with
+     * 0.7.
+     */
+    private static CoreValidator endComponent() {
+        return new CoreValidator(
+                0,
+                new boolean[] {false, false, true, false},
+                new int[] {0, 1, 3, 3, 3},
+                new int[] {0, 1, 2, 4},
+                new int[] {1, 0, 2, 3},
+                new double[] {1.0d, 1.0d, 0.3d, 0.7d});
+    }
+
+    /**
+     * State 0 stays with 0.5 and moves to the fringe state 1 and the sink 2 with 0.25 each.
+     */
+    private static CoreValidator selfLoop() {
+        return new CoreValidator(
+                0,
+                new boolean[] {false, true, false},
+                new int[] {0, 1, 1, 1},
+                new int[] {0, 3},
+                new int[] {0, 1, 2},
+                new double[] {0.5d, 0.25d, 0.25d});
+    }
+
+    @Test
+    void boundedReachability() {
+        assertEquals(0.0d, chain().boundedReachability(0));
+        assertEquals(0.1d, chain().boundedReachability(1), 1.0e-12d);
+        assertEquals(0.25d, selfLoop().boundedReachability(1), 1.0e-12d);
+        assertEquals(0.375d, selfLoop().boundedReachability(2), 1.0e-12d);
+    }
+
+    @Test
+    void unboundedReachability() {
+        assertBounds(0.1d, chain().unboundedReachability(PRECISION), PRECISION);
+        assertBounds(0.5d, selfLoop().unboundedReachability(PRECISION), PRECISION);
+    }
+
+    @Test
+    void unboundedReachabilityDeflatesEndComponents() {
+        // Without deflation, the upper bound of the end component remains one
+        assertBounds(0.3d, endComponent().unboundedReachability(PRECISION), PRECISION);
+    }
+
+    @Test
+    void unboundedReachabilityWithoutFringe() {
+        // A single state with a self-loop, no fringe state is reachable
+        var validator = new CoreValidator(
+                0, new boolean[] {false}, new int[] {0, 1}, new int[] {0, 1}, new int[] {0}, new double[] {1.0d});
+        Bounds bounds = validator.unboundedReachability(PRECISION);
+        assertEquals(0.0d, bounds.lowerBound());
+        assertEquals(0.0d, bounds.upperBound());
+    }
+
+    @Test
+    void unboundedReachabilityTerminatesBelowFloatingPointPrecision() {
+        assertBounds(0.5d, selfLoop().unboundedReachability(0.0d), 1.0e-12d);
+    }
+}
@@ -0,0 +1,56 @@
+package de.tum.in.pet.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CoreFileTest {
+    private static final String MODEL = "/models/brp.prism[N=16]";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws IOException {
+        Path file = directory.resolve("core.bin");
+        List<Object> states = List.of("(s=0)", "(s=1)", 42);
+        CoreFile.write(file, MODEL, 1.0e-4d, states.size(), states.iterator());
+
+        CoreFile core = CoreFile.read(file, MODEL);
+        assertEquals(MODEL, core.model());
+        assertEquals(1.0e-4d, core.precision());
+        assertEquals(Set.of("(s=0)", "(s=1)", "42"), core.states());
+        assertTrue(core.contains("(s=1)"));
+        assertTrue(core.contains(42));
+        assertFalse(core.contains("(s=2)"));
+    }
+
+    @Test
+    void rejectsOtherModel() throws IOException {
+        Path file = directory.resolve("core.bin");
+        CoreFile.write(file, MODEL, 1.0e-4d, 1, List.of("(s=0)").iterator());
+        assertThrows(IllegalArgumentException.class, () -> CoreFile.read(file, "/models/brp.prism[N=32]"));
+    }
+
+    @Test
+    void rejectsWrongSize() {
+        Path file = directory.resolve("core.bin");
+        assertThrows(IOException.class, () -> CoreFile.write(file, MODEL, 1.0e-4d, 2, List.of("(s=0)").iterator()));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("other.bin");
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> CoreFile.read(file, MODEL));
+    }
+}
@@ -0,0 +1,45 @@
+package de.tum.in.pet.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RangesTest {
+    @Test
+    void expandKeepsValuesAndOrder() {
+        assertEquals(List.of("b", "3", "a"), Ranges.expand("b, 3,a"));
+    }
+
+    @Test
+    void expandRanges() {
+        assertEquals(List.of("1", "2", "3"), Ranges.expand("1..3"));
+        assertEquals(List.of("0", "5", "10", "x", "7"), Ranges.expand("0..12:5,x,7..7"));
+    }
+
+    @Test
+    void expandRejectsInvalidRanges() {
+        assertThrows(IllegalArgumentException.class, () -> Ranges.expand("3..1"));
+        assertThrows(IllegalArgumentException.class, () -> Ranges.expand("1..3:0"));
+        assertThrows(IllegalArgumentException.class, () -> Ranges.expand("1..3:1:1"));
+        assertThrows(IllegalArgumentException.class, () -> Ranges.expand("1,,2"));
+    }
+
+    @Test
+    void expandDoesNotOverflow() {
+        String largest = Integer.toString(Integer.MAX_VALUE);
+        assertEquals(List.of(largest), Ranges.expand(largest + ".." + largest));
+    }
+
+    @Test
+    void integersAreSortedAndDistinct() {
+        assertArrayEquals(new int[] {1, 2, 3, 5, 10}, Ranges.integers("10,1..3,2,5"));
+    }
+
+    @Test
+    void integersRejectsNonIntegers() {
+        assertThrows(NumberFormatException.class, () -> Ranges.integers("1,a"));
+    }
+}